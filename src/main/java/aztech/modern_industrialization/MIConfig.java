@@ -24,6 +24,8 @@
 package aztech.modern_industrialization;
 
 import aztech.modern_industrialization.material.MIOreGenerators;
+import aztech.modern_industrialization.pipes.FluidPipeThroughput;
+import aztech.modern_industrialization.pipes.ItemPipeThroughput;
 import me.sargunvohra.mcmods.autoconfig1u.AutoConfig;
 import me.sargunvohra.mcmods.autoconfig1u.ConfigData;
 import me.sargunvohra.mcmods.autoconfig1u.annotation.Config;
@@ -37,9 +39,23 @@ public class MIConfig implements ConfigData {
     @ConfigEntry.Gui.CollapsibleObject
     public MIOreGenerators ores = new MIOreGenerators();
 
+    @ConfigEntry.Gui.CollapsibleObject
+    public ItemPipeThroughput itemPipeThroughput = new ItemPipeThroughput();
+
+    @ConfigEntry.Gui.CollapsibleObject
+    public FluidPipeThroughput fluidPipeThroughput = new FluidPipeThroughput();
+
+    public boolean storeUnloadedPipeNetworks = false;
+
     @ConfigEntry.Gui.Excluded
     private transient static boolean registered = false;
 
+    @Override
+    public void validatePostLoad() {
+        itemPipeThroughput.clamp();
+        fluidPipeThroughput.clamp();
+    }
+
     public static synchronized MIConfig getConfig() {
         if (!registered) {
             AutoConfig.register(MIConfig.class, Toml4jConfigSerializer::new);
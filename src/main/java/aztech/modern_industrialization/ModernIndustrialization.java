@@ -44,6 +44,7 @@ import aztech.modern_industrialization.material.*;
 import aztech.modern_industrialization.pipes.MIPipes;
 import aztech.modern_industrialization.tools.WrenchItem;
 import aztech.modern_industrialization.util.ChunkUnloadBlockEntity;
+import aztech.modern_industrialization.util.WorldHelper;
 import me.shedaniel.cloth.api.common.events.v1.PlayerChangeWorldCallback;
 import me.shedaniel.cloth.api.common.events.v1.PlayerLeaveCallback;
 import net.devtech.arrp.api.RRPCallback;
@@ -60,6 +61,7 @@ import net.devtech.arrp.json.models.JTextures;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.client.itemgroup.FabricItemGroupBuilder;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.network.ServerSidePacketRegistry;
 import net.fabricmc.fabric.api.registry.FuelRegistry;
 import net.fabricmc.fabric.api.screenhandler.v1.ScreenHandlerRegistry;
@@ -140,6 +142,12 @@ public class ModernIndustrialization implements ModInitializer {
                 }
             }
         });
+        ServerTickEvents.END_WORLD_TICK.register(world -> {
+            if (LOGGER.isDebugEnabled() && world.getTime() % 6000 == 0) {
+                LOGGER.debug("Skipped {} neighbor lookups in unloaded chunks in {}", WorldHelper.getSkippedNeighborLookups(world),
+                        world.getRegistryKey().getValue());
+            }
+        });
         PlayerChangeWorldCallback.EVENT.register((player, oldWorld, newWorld) -> MIKeyMap.clear(player));
         PlayerLeaveCallback.EVENT.register(MIKeyMap::clear);
 
@@ -58,6 +58,11 @@ public class EnergyApi {
                     public boolean canInsert(CableTier tier) {
                         return true;
                     }
+
+                    @Override
+                    public long getDemand() {
+                        return (long) Math.floor(Math.min(handler.getMaxStored() - handler.getEnergy(), handler.getMaxInput()));
+                    }
                 };
             } else {
                 return null;
@@ -40,4 +40,15 @@ public interface EnergyExtractable extends EnergyMoveable {
      *         false otherwise.
      */
     boolean canExtract(CableTier tier);
+
+    /**
+     * Return how much energy could be extracted right now. This is called every
+     * tick by energy networks to skip empty blocks, so it must be cheap. An upper
+     * bound is fine.
+     * 
+     * @return The max amount of EU that {@link #extractEnergy} could extract.
+     */
+    default long getSupply() {
+        return Long.MAX_VALUE;
+    }
 }
@@ -40,4 +40,15 @@ public interface EnergyInsertable extends EnergyMoveable {
      *         false otherwise.
      */
     boolean canInsert(CableTier tier);
+
+    /**
+     * Return how much energy the block could accept right now. This is called
+     * every tick by energy networks to skip saturated blocks, so it must be cheap.
+     * An upper bound is fine.
+     * 
+     * @return The max amount of EU that {@link #insertEnergy} could accept.
+     */
+    default long getDemand() {
+        return Long.MAX_VALUE;
+    }
 }
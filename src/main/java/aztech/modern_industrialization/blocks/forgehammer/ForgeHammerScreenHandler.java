@@ -27,10 +27,13 @@ import aztech.modern_industrialization.MIIdentifier;
 import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.machines.recipe.MachineRecipe;
 import aztech.modern_industrialization.machines.recipe.MachineRecipeType;
+import java.util.Collections;
+import java.util.List;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.inventory.Inventory;
 import net.minecraft.inventory.SimpleInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.network.packet.s2c.play.ScreenHandlerSlotUpdateS2CPacket;
 import net.minecraft.screen.ScreenHandler;
@@ -133,7 +136,9 @@ public class ForgeHammerScreenHandler extends ScreenHandler {
             if (!input.getStack(0).isEmpty()) {
 
                 // absolutely nothing could go wrong
-                for (MachineRecipe recipe : (isHammer ? RECIPE_HAMMER : RECIPE_SAW).getRecipes((ServerWorld) world)) {
+                MachineRecipeType recipeType = isHammer ? RECIPE_HAMMER : RECIPE_SAW;
+                List<Item> items = Collections.singletonList(input.getStack(0).getItem());
+                for (MachineRecipe recipe : recipeType.getCandidates((ServerWorld) world, items, Collections.emptyList(), Integer.MAX_VALUE)) {
                     MachineRecipe.ItemInput recipeInput = recipe.itemInputs.get(0);
                     if (recipeInput.matches(input.getStack(0)) && recipeInput.amount <= input.getStack(0).getCount()) {
                         MachineRecipe.ItemOutput output = recipe.itemOutputs.get(0);
@@ -25,10 +25,7 @@ package aztech.modern_industrialization.inventory;
 
 import static alexiil.mc.lib.attributes.Simulation.ACTION;
 
-import alexiil.mc.lib.attributes.SearchOption;
-import alexiil.mc.lib.attributes.SearchOptions;
 import alexiil.mc.lib.attributes.Simulation;
-import alexiil.mc.lib.attributes.fluid.FluidAttributes;
 import alexiil.mc.lib.attributes.fluid.FluidInsertable;
 import alexiil.mc.lib.attributes.fluid.FluidTransferable;
 import alexiil.mc.lib.attributes.fluid.amount.FluidAmount;
@@ -36,9 +33,9 @@ import alexiil.mc.lib.attributes.fluid.filter.FluidFilter;
 import alexiil.mc.lib.attributes.fluid.volume.FluidKey;
 import alexiil.mc.lib.attributes.fluid.volume.FluidKeys;
 import alexiil.mc.lib.attributes.fluid.volume.FluidVolume;
-import alexiil.mc.lib.attributes.item.ItemAttributes;
 import alexiil.mc.lib.attributes.item.ItemInsertable;
 import aztech.modern_industrialization.util.NbtHelper;
+import aztech.modern_industrialization.util.NeighborAttributeCache;
 import java.math.RoundingMode;
 import java.util.List;
 import java.util.function.Consumer;
@@ -144,11 +141,9 @@ public interface ConfigurableInventory extends Inventory, SidedInventory, FluidT
         return getItemStacks().get(slot).pipesExtract;
     }
 
-    default void autoExtractItems(World world, BlockPos pos, Direction direction) {
-        SearchOption option = SearchOptions.inDirection(direction);
-        if (ItemAttributes.INSERTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny()) {
-            ItemInsertable insertable = ItemAttributes.INSERTABLE.get(world, pos.offset(direction), option);
-            autoExtractItems(insertable, false);
+    default void autoExtractItems(World world, BlockPos pos, Direction direction, NeighborAttributeCache<ItemInsertable> insertables) {
+        if (insertables.hasOfferedAny(world, pos, direction)) {
+            autoExtractItems(insertables.get(world, pos, direction), false);
         }
     }
 
@@ -161,11 +156,9 @@ public interface ConfigurableInventory extends Inventory, SidedInventory, FluidT
         }
     }
 
-    default void autoExtractFluids(World world, BlockPos pos, Direction direction) {
-        SearchOption option = SearchOptions.inDirection(direction);
-        if (FluidAttributes.INSERTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny()) {
-            FluidInsertable insertable = FluidAttributes.INSERTABLE.get(world, pos.offset(direction), option);
-            autoExtractFluids(insertable, false);
+    default void autoExtractFluids(World world, BlockPos pos, Direction direction, NeighborAttributeCache<FluidInsertable> insertables) {
+        if (insertables.hasOfferedAny(world, pos, direction)) {
+            autoExtractFluids(insertables.get(world, pos, direction), false);
         }
     }
 
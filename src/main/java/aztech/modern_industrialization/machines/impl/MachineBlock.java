@@ -92,6 +92,17 @@ public class MachineBlock extends Block implements BlockEntityProvider, IWrencha
         }
     }
 
+    @Override
+    public void neighborUpdate(BlockState state, World world, BlockPos pos, Block block, BlockPos fromPos, boolean notify) {
+        if (!world.isClient) {
+            BlockEntity entity = world.getBlockEntity(pos);
+            if (entity instanceof MachineBlockEntity) {
+                ((MachineBlockEntity) entity).onNeighborUpdate();
+            }
+        }
+        super.neighborUpdate(state, world, pos, block, fromPos, notify);
+    }
+
     @Override
     public ActionResult onUse(BlockState state, World world, BlockPos pos, PlayerEntity player, Hand hand, BlockHitResult hit) {
         // Allow wrench to process useOnBlock
@@ -25,8 +25,12 @@ package aztech.modern_industrialization.machines.impl;
 
 import static alexiil.mc.lib.attributes.Simulation.ACTION;
 
+import alexiil.mc.lib.attributes.fluid.FluidAttributes;
+import alexiil.mc.lib.attributes.fluid.FluidInsertable;
 import alexiil.mc.lib.attributes.fluid.volume.FluidKey;
 import alexiil.mc.lib.attributes.fluid.volume.FluidKeys;
+import alexiil.mc.lib.attributes.item.ItemAttributes;
+import alexiil.mc.lib.attributes.item.ItemInsertable;
 import aztech.modern_industrialization.MIFluids;
 import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.api.energy.*;
@@ -34,7 +38,9 @@ import aztech.modern_industrialization.inventory.ConfigurableFluidStack;
 import aztech.modern_industrialization.inventory.ConfigurableInventory;
 import aztech.modern_industrialization.inventory.ConfigurableItemStack;
 import aztech.modern_industrialization.machines.recipe.MachineRecipe;
-import aztech.modern_industrialization.machines.recipe.MachineRecipeType;
+import aztech.modern_industrialization.pipes.MIPipes;
+import aztech.modern_industrialization.util.NeighborAttributeCache;
+import aztech.modern_industrialization.util.WorldHelper;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -44,6 +50,7 @@ import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.fluid.Fluid;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
@@ -56,6 +63,7 @@ import net.minecraft.text.Text;
 import net.minecraft.text.TranslatableText;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Tickable;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.util.registry.Registry;
 
@@ -67,6 +75,10 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
     protected List<ConfigurableFluidStack> fluidStacks;
 
     protected long storedEu = 0;
+    /**
+     * See {@link #getContentsSignature}, only updated by {@link #markDirty}.
+     */
+    private long contentsSignature = 0;
 
     protected long getMaxStoredEu() {
         return factory.tier == null ? -1 : factory.tier.getMaxStoredEu();
@@ -87,6 +99,9 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
 
     protected EnergyInsertable insertable = null;
 
+    protected final NeighborAttributeCache<ItemInsertable> itemInsertableCache = new NeighborAttributeCache<>(ItemAttributes.INSERTABLE);
+    protected final NeighborAttributeCache<FluidInsertable> fluidInsertableCache = new NeighborAttributeCache<>(FluidAttributes.INSERTABLE);
+
     public MachineBlockEntity(MachineFactory factory) {
         super(factory.blockEntityType, Direction.NORTH);
         this.factory = factory;
@@ -167,6 +182,37 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
         return fluidStacks;
     }
 
+    @Override
+    public void markDirty() {
+        super.markDirty();
+        if (world != null && !world.isClient) {
+            long signature = getContentsSignature();
+            if (signature != contentsSignature) {
+                contentsSignature = signature;
+                // The contents changed, so connected pipes might have work to do.
+                MIPipes.PIPE_NETWORKS.get(world).wakeUpNetworks(pos);
+            }
+        }
+    }
+
+    /**
+     * Cheap summary of the items, fluids and energy of the machine. It is not
+     * unique, but sleeping pipe networks are ticked regularly anyway.
+     */
+    private long getContentsSignature() {
+        long signature = storedEu;
+        for (ConfigurableItemStack stack : itemStacks) {
+            ItemStack itemStack = stack.getStack();
+            signature = 31 * signature + System.identityHashCode(itemStack.getItem());
+            signature = 31 * signature + itemStack.getCount();
+        }
+        for (ConfigurableFluidStack stack : fluidStacks) {
+            signature = 31 * signature + System.identityHashCode(stack.getFluid());
+            signature = 31 * signature + stack.getAmount();
+        }
+        return signature;
+    }
+
     @Override
     public Text getDisplayName() {
         return new TranslatableText(factory.getTranslationKey());
@@ -253,15 +299,19 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
         if (efficiencyTicks > 0) {
             return Collections.singletonList(activeRecipe);
         } else {
-            ServerWorld serverWorld = (ServerWorld) world;
-            MachineRecipeType recipeType = factory.recipeType;
-            List<MachineRecipe> recipes = new ArrayList<>(recipeType.getFluidOnlyRecipes(serverWorld));
+            List<Item> items = new ArrayList<>();
             for (ConfigurableItemStack stack : getItemInputStacks()) {
                 if (!stack.getStack().isEmpty()) {
-                    recipes.addAll(recipeType.getMatchingRecipes(serverWorld, stack.getStack().getItem()));
+                    items.add(stack.getStack().getItem());
+                }
+            }
+            List<Fluid> fluids = new ArrayList<>();
+            for (ConfigurableFluidStack stack : getFluidInputStacks()) {
+                if (stack.getAmount() > 0 && stack.getFluid().getRawFluid() != null) {
+                    fluids.add(stack.getFluid().getRawFluid());
                 }
             }
-            return recipes;
+            return factory.recipeType.getCandidates((ServerWorld) world, items, fluids, getMaxRecipeEu());
         }
     }
 
@@ -304,8 +354,15 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
         }
     }
 
+    /**
+     * Get the maximum eu/t of the recipes that this machine can run.
+     */
+    protected int getMaxRecipeEu() {
+        return getTier().getMaxEu();
+    }
+
     protected boolean banRecipe(MachineRecipe recipe) {
-        return recipe.eu > getTier().getMaxEu();
+        return recipe.eu > getMaxRecipeEu();
     }
 
     protected boolean updateActiveRecipe() {
@@ -403,12 +460,20 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
     protected void autoExtract() {
         if (outputDirection != null) {
             if (extractItems)
-                autoExtractItems(world, pos, outputDirection);
+                autoExtractItems(world, pos, outputDirection, itemInsertableCache);
             if (extractFluids)
-                autoExtractFluids(world, pos, outputDirection);
+                autoExtractFluids(world, pos, outputDirection, fluidInsertableCache);
         }
     }
 
+    /**
+     * Called by the block when a neighbor changes.
+     */
+    public void onNeighborUpdate() {
+        itemInsertableCache.invalidate();
+        fluidInsertableCache.invalidate();
+    }
+
     // Must be true if canRecipeStart is true!
     protected boolean canRecipeProgress() {
         return true;
@@ -693,6 +758,11 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
             public boolean canInsert(CableTier tier) {
                 return tier == cableTier;
             }
+
+            @Override
+            public long getDemand() {
+                return Math.max(0, getMaxStoredEu() - storedEu);
+            }
         };
     }
 
@@ -710,11 +780,20 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
             public boolean canExtract(CableTier tier) {
                 return tier == cableTier;
             }
+
+            @Override
+            public long getSupply() {
+                return storedEu;
+            }
         };
     }
 
     protected void autoExtractEnergy(Direction direction, CableTier extractTier) {
-        EnergyMoveable insertable = EnergyApi.MOVEABLE.get(world, pos.offset(direction), direction.getOpposite());
+        BlockPos targetPos = pos.offset(direction);
+        if (!WorldHelper.isNeighborLoaded(world, targetPos)) {
+            return;
+        }
+        EnergyMoveable insertable = EnergyApi.MOVEABLE.get(world, targetPos, direction.getOpposite());
         if (insertable instanceof EnergyInsertable && ((EnergyInsertable) insertable).canInsert(extractTier)) {
             storedEu = ((EnergyInsertable) insertable).insertEnergy(storedEu);
         }
@@ -724,14 +803,14 @@ public class MachineBlockEntity extends AbstractMachineBlockEntity implements Ti
         // ITEM INPUTS
         outer: for (MachineRecipe.ItemInput input : recipe.itemInputs) {
             for (ConfigurableItemStack stack : getItemInputStacks()) {
-                if (input.matches(new ItemStack(stack.getLockedItem())))
+                if (input.matches(stack.getLockedItem()))
                     continue outer;
             }
             Item targetItem = null;
             // Find the first match in the player inventory (useful for logs for example)
             for (int i = 0; i < inventory.size(); i++) {
                 ItemStack playerStack = inventory.getStack(i);
-                if (!playerStack.isEmpty() && input.matches(new ItemStack(playerStack.getItem()))) {
+                if (!playerStack.isEmpty() && input.matches(playerStack.getItem())) {
                     targetItem = playerStack.getItem();
                     break;
                 }
@@ -25,7 +25,6 @@ package aztech.modern_industrialization.machines.impl.multiblock;
 
 import static aztech.modern_industrialization.machines.impl.multiblock.HatchType.*;
 
-import alexiil.mc.lib.attributes.SearchOptions;
 import alexiil.mc.lib.attributes.fluid.FluidAttributes;
 import alexiil.mc.lib.attributes.fluid.FluidExtractable;
 import alexiil.mc.lib.attributes.fluid.FluidInsertable;
@@ -37,6 +36,7 @@ import alexiil.mc.lib.attributes.item.ItemInvUtil;
 import aztech.modern_industrialization.machines.impl.MachineBlockEntity;
 import aztech.modern_industrialization.machines.impl.MachineFactory;
 import aztech.modern_industrialization.util.NbtHelper;
+import aztech.modern_industrialization.util.NeighborAttributeCache;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.CompoundTag;
@@ -51,6 +51,14 @@ public class HatchBlockEntity extends MachineBlockEntity {
     private BlockPos lastSyncedControllerPos = null;
     private boolean lateLoaded = false;
     public final HatchType type;
+    private final NeighborAttributeCache<ItemExtractable> itemExtractableCache = new NeighborAttributeCache<>(ItemAttributes.EXTRACTABLE);
+    private final NeighborAttributeCache<FluidExtractable> fluidExtractableCache = new NeighborAttributeCache<>(FluidAttributes.EXTRACTABLE);
+    /**
+     * The attributes of this hatch, they never change so we only look them up
+     * once.
+     */
+    private ItemInsertable selfItemInsertable = null;
+    private FluidInsertable selfFluidInsertable = null;
 
     public HatchBlockEntity(MachineFactory factory, HatchType type) {
         super(factory);
@@ -95,26 +103,33 @@ public class HatchBlockEntity extends MachineBlockEntity {
         if (controllerPos != lastSyncedControllerPos)
             sync();
         if (extractItems && type == ITEM_OUTPUT) {
-            autoExtractItems(world, pos, outputDirection);
+            autoExtractItems(world, pos, outputDirection, itemInsertableCache);
         }
         if (extractFluids && type == FLUID_OUTPUT) {
-            autoExtractFluids(world, pos, outputDirection);
+            autoExtractFluids(world, pos, outputDirection, fluidInsertableCache);
         }
         if (extractItems && type == ITEM_INPUT) {
-            ItemExtractable extractable = ItemAttributes.EXTRACTABLE.get(world, pos.offset(outputDirection),
-                    SearchOptions.inDirection(outputDirection));
-            ItemInsertable insertable = ItemAttributes.INSERTABLE.get(world, pos);
-            ItemInvUtil.moveMultiple(extractable, insertable);
+            if (selfItemInsertable == null) {
+                selfItemInsertable = ItemAttributes.INSERTABLE.get(world, pos);
+            }
+            ItemInvUtil.moveMultiple(itemExtractableCache.get(world, pos, outputDirection), selfItemInsertable);
         }
         if (extractFluids && type == FLUID_INPUT) {
-            FluidExtractable extractable = FluidAttributes.EXTRACTABLE.get(world, pos.offset(outputDirection),
-                    SearchOptions.inDirection(outputDirection));
-            FluidInsertable insertable = FluidAttributes.INSERTABLE.get(world, pos);
-            FluidVolumeUtil.move(extractable, insertable);
+            if (selfFluidInsertable == null) {
+                selfFluidInsertable = FluidAttributes.INSERTABLE.get(world, pos);
+            }
+            FluidVolumeUtil.move(fluidExtractableCache.get(world, pos, outputDirection), selfFluidInsertable);
         }
         markDirty();
     }
 
+    @Override
+    public void onNeighborUpdate() {
+        super.onNeighborUpdate();
+        itemExtractableCache.invalidate();
+        fluidExtractableCache.invalidate();
+    }
+
     @Override
     public CompoundTag toTag(CompoundTag tag) {
         super.toTag(tag);
@@ -25,11 +25,13 @@ package aztech.modern_industrialization.machines.recipe;
 
 import static aztech.modern_industrialization.ModernIndustrialization.MOD_ID;
 
+import aztech.modern_industrialization.mixin.RecipeManagerAccessor;
 import java.util.*;
 import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
 import net.minecraft.recipe.RecipeType;
 import net.minecraft.recipe.SmeltingRecipe;
-import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
 
 public class FurnaceRecipeProxy extends MachineRecipeType {
@@ -37,15 +39,18 @@ public class FurnaceRecipeProxy extends MachineRecipeType {
         super(id);
     }
 
-    private long lastUpdate = 0;
-    private static final long UPDATE_INTERVAL = 20 * 1000;
-
-    private final Map<Identifier, MachineRecipe> cachedRecipes = new HashMap<>();
-    private List<MachineRecipe> sortedRecipes;
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Map<Identifier, ? extends Recipe<?>> getSourceRecipes(RecipeManager recipeManager) {
+        RecipeManagerAccessor accessor = (RecipeManagerAccessor) recipeManager;
+        return (Map<Identifier, ? extends Recipe<?>>) (Map) accessor.modern_industrialization_getAllOfType(RecipeType.SMELTING);
+    }
 
-    private void buildCachedRecipes(ServerWorld world) {
-        cachedRecipes.clear();
-        for (SmeltingRecipe smeltingRecipe : world.getRecipeManager().listAllOfType(RecipeType.SMELTING)) {
+    @Override
+    protected List<MachineRecipe> buildRecipes(Map<Identifier, ? extends Recipe<?>> source) {
+        List<MachineRecipe> recipes = new ArrayList<>();
+        for (Recipe<?> sourceRecipe : source.values()) {
+            SmeltingRecipe smeltingRecipe = (SmeltingRecipe) sourceRecipe;
             Ingredient ingredient = smeltingRecipe.getPreviewInputs().get(0);
             Identifier id = new Identifier(smeltingRecipe.getId().getNamespace(), smeltingRecipe.getId().getPath() + "_exported_mi_furnace");
             MachineRecipe recipe = new MachineRecipe(id, this);
@@ -55,20 +60,10 @@ public class FurnaceRecipeProxy extends MachineRecipeType {
             recipe.fluidInputs = Collections.emptyList();
             recipe.itemOutputs = Collections.singletonList(new MachineRecipe.ItemOutput(smeltingRecipe.getOutput().getItem(), 1, 1));
             recipe.fluidOutputs = Collections.emptyList();
-            cachedRecipes.put(id, recipe);
+            recipes.add(recipe);
         }
 
-        sortedRecipes = new ArrayList<>(cachedRecipes.values());
-        sortedRecipes.sort(Comparator.comparing(r -> r.getId().getNamespace().equals(MOD_ID) ? 0 : 1));
-    }
-
-    @Override
-    public Collection<MachineRecipe> getRecipes(ServerWorld world) {
-        long time = System.currentTimeMillis();
-        if (time - lastUpdate > UPDATE_INTERVAL) {
-            lastUpdate = time;
-            buildCachedRecipes(world);
-        }
-        return sortedRecipes;
+        recipes.sort(Comparator.comparing(r -> r.getId().getNamespace().equals(MOD_ID) ? 0 : 1));
+        return recipes;
     }
 }
@@ -27,11 +27,14 @@ import aztech.modern_industrialization.machines.impl.MachineBlockEntity;
 import aztech.modern_industrialization.mixin_impl.IngredientMatchingStacksAccessor;
 import aztech.modern_industrialization.util.DefaultedListWrapper;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import net.minecraft.fluid.Fluid;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
 import net.minecraft.recipe.Ingredient;
 import net.minecraft.recipe.Recipe;
 import net.minecraft.recipe.RecipeSerializer;
@@ -126,11 +129,52 @@ public class MachineRecipe implements Recipe<MachineBlockEntity> {
             this.probability = probability;
         }
 
+        /**
+         * The items of the ingredient and their raw ids, only set once the input is
+         * compiled.
+         */
+        private List<Item> inputItems = null;
+        private BitSet inputItemIds = null;
+
+        /**
+         * Expand the ingredient once, so that matching only needs the raw id of the
+         * item. Called by {@link MachineRecipeIndex} when the recipes are indexed,
+         * after the tags are loaded.
+         */
+        void compile() {
+            inputItems = Collections.unmodifiableList(computeInputItems());
+            inputItemIds = new BitSet();
+            for (Item item : inputItems) {
+                inputItemIds.set(Item.getRawId(item));
+            }
+        }
+
         public boolean matches(ItemStack otherStack) {
-            return ingredient.test(otherStack);
+            if (inputItemIds == null) {
+                return ingredient.test(otherStack);
+            }
+            return matches(otherStack.getItem());
+        }
+
+        public boolean matches(Item item) {
+            if (item == null) {
+                item = Items.AIR;
+            }
+            if (inputItemIds == null) {
+                return ingredient.test(new ItemStack(item));
+            }
+            // Like Ingredient#test, an empty ingredient only matches empty stacks.
+            if (inputItems.isEmpty()) {
+                return item == Items.AIR;
+            }
+            return inputItemIds.get(Item.getRawId(item));
         }
 
         public List<Item> getInputItems() {
+            return inputItems != null ? inputItems : computeInputItems();
+        }
+
+        private List<Item> computeInputItems() {
             return Arrays.stream(((IngredientMatchingStacksAccessor) (Object) ingredient).modern_industrialization_getMatchingStacks())
                     .map(ItemStack::getItem).distinct().collect(Collectors.toList());
         }
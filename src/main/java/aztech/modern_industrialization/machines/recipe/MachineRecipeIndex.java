@@ -0,0 +1,227 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.machines.recipe;
+
+import aztech.modern_industrialization.machines.impl.MachineTier;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import java.util.*;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.item.Item;
+import net.minecraft.util.Identifier;
+
+/**
+ * An index of the recipes of a {@link MachineRecipeType}, built once every time
+ * the recipes are reloaded. The version is increased every time the recipes of
+ * the type actually change.
+ * <p>
+ * The recipes never change, but the views of {@link #getCandidates} for eu/t
+ * limits that are not a machine tier are cached lazily, and the lookups reuse
+ * the same buffers, without synchronization. The index must only be used from
+ * the server thread.
+ */
+public final class MachineRecipeIndex {
+    private final int version;
+    /**
+     * The map of the recipe manager that the index was built from.
+     */
+    final Object source;
+    /**
+     * The serialized recipes, used to check if the recipes changed after a reload.
+     */
+    final byte[] fingerprint;
+    private final List<MachineRecipe> recipes;
+    private final Map<Identifier, MachineRecipe> recipesById;
+    /*
+     * Inverted index of the inputs: for the i-th item input, the recipes whose i-th
+     * item input accepts an item, as a bit set of positions in the recipe list.
+     * The recipes that don't need an i-th item input (because they have fewer
+     * inputs, or because its amount is 0) are stored separately. Same for the
+     * fluids.
+     */
+    private final List<Map<Item, BitSet>> recipesByItemInput = new ArrayList<>();
+    private final List<BitSet> recipesWithoutItemInput = new ArrayList<>();
+    private final List<Map<Fluid, BitSet>> recipesByFluidInput = new ArrayList<>();
+    private final List<BitSet> recipesWithoutFluidInput = new ArrayList<>();
+    /**
+     * The recipes that can run with some maximum eu/t, keyed by that maximum. The
+     * views of the machine tiers are built with the index, other views are built
+     * the first time they are requested. Shared with the copies made by
+     * {@link #withSource}.
+     */
+    private final Int2ObjectOpenHashMap<BitSet> recipesByMaxEu;
+    /**
+     * Buffers reused by every call to {@link #getCandidates}, which runs whenever
+     * an idle machine looks for a recipe.
+     */
+    private final BitSet candidates = new BitSet();
+    private final BitSet matchingRecipes = new BitSet();
+    private final List<MachineRecipe> candidateList = new ArrayList<>();
+
+    MachineRecipeIndex(int version, Object source, byte[] fingerprint, List<MachineRecipe> recipes) {
+        this.version = version;
+        this.source = source;
+        this.fingerprint = fingerprint;
+        this.recipes = Collections.unmodifiableList(recipes);
+
+        Map<Identifier, MachineRecipe> recipesById = new HashMap<>();
+        for (MachineRecipe recipe : recipes) {
+            recipesById.putIfAbsent(recipe.getId(), recipe);
+        }
+        this.recipesById = recipesById;
+
+        int maxItemInputs = 0, maxFluidInputs = 0;
+        for (MachineRecipe recipe : recipes) {
+            for (MachineRecipe.ItemInput input : recipe.itemInputs) {
+                input.compile();
+            }
+            maxItemInputs = Math.max(maxItemInputs, recipe.itemInputs.size());
+            maxFluidInputs = Math.max(maxFluidInputs, recipe.fluidInputs.size());
+        }
+        for (int i = 0; i < maxItemInputs; ++i) {
+            recipesByItemInput.add(new Reference2ObjectOpenHashMap<>());
+            recipesWithoutItemInput.add(new BitSet(recipes.size()));
+        }
+        for (int i = 0; i < maxFluidInputs; ++i) {
+            recipesByFluidInput.add(new Reference2ObjectOpenHashMap<>());
+            recipesWithoutFluidInput.add(new BitSet(recipes.size()));
+        }
+        for (int r = 0; r < recipes.size(); ++r) {
+            MachineRecipe recipe = recipes.get(r);
+            for (int i = 0; i < maxItemInputs; ++i) {
+                if (i >= recipe.itemInputs.size() || recipe.itemInputs.get(i).amount == 0) {
+                    recipesWithoutItemInput.get(i).set(r);
+                } else {
+                    for (Item item : recipe.itemInputs.get(i).getInputItems()) {
+                        recipesByItemInput.get(i).computeIfAbsent(item, k -> new BitSet()).set(r);
+                    }
+                }
+            }
+            for (int i = 0; i < maxFluidInputs; ++i) {
+                if (i >= recipe.fluidInputs.size() || recipe.fluidInputs.get(i).amount == 0) {
+                    recipesWithoutFluidInput.get(i).set(r);
+                } else {
+                    recipesByFluidInput.get(i).computeIfAbsent(recipe.fluidInputs.get(i).fluid, k -> new BitSet()).set(r);
+                }
+            }
+        }
+
+        recipesByMaxEu = new Int2ObjectOpenHashMap<>();
+        for (MachineTier tier : MachineTier.values()) {
+            getRecipesUpToEu(tier.getMaxEu());
+        }
+    }
+
+    private MachineRecipeIndex(MachineRecipeIndex index, Object source) {
+        this.version = index.version;
+        this.source = source;
+        this.fingerprint = index.fingerprint;
+        this.recipes = index.recipes;
+        this.recipesById = index.recipesById;
+        this.recipesByItemInput.addAll(index.recipesByItemInput);
+        this.recipesWithoutItemInput.addAll(index.recipesWithoutItemInput);
+        this.recipesByFluidInput.addAll(index.recipesByFluidInput);
+        this.recipesWithoutFluidInput.addAll(index.recipesWithoutFluidInput);
+        this.recipesByMaxEu = index.recipesByMaxEu;
+    }
+
+    /**
+     * Get the same index, built from another source map with the same recipes.
+     */
+    MachineRecipeIndex withSource(Object source) {
+        return new MachineRecipeIndex(this, source);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<MachineRecipe> getRecipes() {
+        return recipes;
+    }
+
+    /**
+     * Get the recipe with some id, or null if there is no such recipe.
+     */
+    public MachineRecipe getRecipe(Identifier id) {
+        return recipesById.get(id);
+    }
+
+    private BitSet getRecipesUpToEu(int maxEu) {
+        BitSet view = recipesByMaxEu.get(maxEu);
+        if (view == null) {
+            view = new BitSet(recipes.size());
+            for (int r = 0; r < recipes.size(); ++r) {
+                if (recipes.get(r).eu <= maxEu) {
+                    view.set(r);
+                }
+            }
+            recipesByMaxEu.put(maxEu, view);
+        }
+        return view;
+    }
+
+    /**
+     * Get the recipes that use at most maxEu eu/t and whose inputs can all be
+     * matched by some of the items and fluids, in the order of
+     * {@link #getRecipes}. The amounts are not checked.
+     * 
+     * @return A list that is reused by the next call, so it must not be modified or
+     *         kept.
+     */
+    public List<MachineRecipe> getCandidates(Collection<Item> items, Collection<Fluid> fluids, int maxEu) {
+        candidates.clear();
+        candidates.or(getRecipesUpToEu(maxEu));
+        for (int i = 0; i < recipesByItemInput.size() && !candidates.isEmpty(); ++i) {
+            candidates.and(getMatchingRecipes(recipesByItemInput.get(i), recipesWithoutItemInput.get(i), items));
+        }
+        for (int i = 0; i < recipesByFluidInput.size() && !candidates.isEmpty(); ++i) {
+            candidates.and(getMatchingRecipes(recipesByFluidInput.get(i), recipesWithoutFluidInput.get(i), fluids));
+        }
+
+        candidateList.clear();
+        for (int r = candidates.nextSetBit(0); r >= 0; r = candidates.nextSetBit(r + 1)) {
+            candidateList.add(recipes.get(r));
+        }
+        return candidateList;
+    }
+
+    /**
+     * Get the recipes whose input at some position is not needed, or accepts one of
+     * the keys.
+     * 
+     * @return A bit set that is reused by the next call.
+     */
+    private <T> BitSet getMatchingRecipes(Map<T, BitSet> recipesByKey, BitSet recipesWithoutInput, Collection<T> keys) {
+        matchingRecipes.clear();
+        matchingRecipes.or(recipesWithoutInput);
+        for (T key : keys) {
+            BitSet recipesWithKey = recipesByKey.get(key);
+            if (recipesWithKey != null) {
+                matchingRecipes.or(recipesWithKey);
+            }
+        }
+        return matchingRecipes;
+    }
+}
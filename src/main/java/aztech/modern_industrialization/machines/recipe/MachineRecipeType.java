@@ -25,6 +25,7 @@ package aztech.modern_industrialization.machines.recipe;
 
 import aztech.modern_industrialization.mixin.RecipeManagerAccessor;
 import com.google.gson.*;
+import io.netty.buffer.Unpooled;
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -33,6 +34,8 @@ import net.minecraft.fluid.Fluid;
 import net.minecraft.item.Item;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.recipe.Ingredient;
+import net.minecraft.recipe.Recipe;
+import net.minecraft.recipe.RecipeManager;
 import net.minecraft.recipe.RecipeSerializer;
 import net.minecraft.recipe.RecipeType;
 import net.minecraft.server.world.ServerWorld;
@@ -49,69 +52,89 @@ public class MachineRecipeType implements RecipeType<MachineRecipe>, RecipeSeria
     /**
      * Never modify or store the result!
      */
-    @SuppressWarnings("unchecked")
     public Collection<MachineRecipe> getRecipes(ServerWorld world) {
-        return (Collection<MachineRecipe>) (Collection) ((RecipeManagerAccessor) world.getRecipeManager()).modern_industrialization_getAllOfType(this)
-                .values();
+        return getIndex(world).getRecipes();
     }
 
     public MachineRecipe getRecipe(ServerWorld world, Identifier id) {
-        return getRecipes(world).stream().filter(r -> r.getId().equals(id)).findFirst().orElse(null);
+        return getIndex(world).getRecipe(id);
     }
 
     /*
-     * Smart recipe system to avoid iterating over all available recipes. Every
-     * recipe can be accessed by the type of its first input, so we build a cache
-     * Item -> MachineRecipe. We also need to store recipes that have fluid inputs
-     * but no item inputs. This cache is updated every 20 seconds in case the
-     * recipes are sometimes reloaded. TODO: only rebuild when the recipes have been
-     * reloaded
+     * Smart recipe system to avoid iterating over all available recipes. The
+     * recipes are indexed once after every reload: the recipe manager creates a new
+     * map of recipes for every type when it is reloaded, so we only rebuild the
+     * index when that map changes. If the recipes of this type are the same as
+     * before the reload, the previous index is kept.
      */
-    private Map<Item, List<MachineRecipe>> recipeCache = new HashMap<>();
-    private List<MachineRecipe> fluidOnlyRecipes = new ArrayList<>();
-    private long lastUpdate = 0;
-    private static final long UPDATE_INTERVAL = 20 * 1000; // 20 seconds
+    private MachineRecipeIndex index = null;
 
     /**
-     * Update recipe cache if necessary
+     * Get the index of the current recipes, building it if the recipes were
+     * reloaded.
      */
-    private void updateRecipeCache(ServerWorld world) {
-        long time = System.currentTimeMillis();
-        if (time - lastUpdate <= UPDATE_INTERVAL)
-            return;
-
-        // Update cache
-        lastUpdate = time;
-        recipeCache.clear();
-        fluidOnlyRecipes.clear();
-        for (MachineRecipe recipe : getRecipes(world)) {
-            if (recipe.itemInputs.size() == 0) {
-                if (recipe.fluidInputs.size() > 0) {
-                    fluidOnlyRecipes.add(recipe);
-                }
+    public MachineRecipeIndex getIndex(ServerWorld world) {
+        Map<Identifier, ? extends Recipe<?>> source = getSourceRecipes(world.getRecipeManager());
+        MachineRecipeIndex currentIndex = index;
+        if (currentIndex == null || currentIndex.source != source) {
+            List<MachineRecipe> recipes = buildRecipes(source);
+            byte[] fingerprint = computeFingerprint(recipes);
+            if (currentIndex != null && Arrays.equals(fingerprint, currentIndex.fingerprint)) {
+                currentIndex = currentIndex.withSource(source);
             } else {
-                for (Item inputItem : recipe.itemInputs.get(0).getInputItems()) {
-                    recipeCache.putIfAbsent(inputItem, new ArrayList<>());
-                    recipeCache.get(inputItem).add(recipe);
-                }
+                currentIndex = new MachineRecipeIndex(currentIndex == null ? 0 : currentIndex.getVersion() + 1, source, fingerprint, recipes);
             }
+            index = currentIndex;
         }
+        return currentIndex;
     }
 
     /**
-     * Get all recipes that are using some Item.
+     * Get the recipes that the index is built from.
      */
-    public Collection<MachineRecipe> getMatchingRecipes(ServerWorld world, Item input) {
-        updateRecipeCache(world);
-        return Collections.unmodifiableCollection(recipeCache.getOrDefault(input, Collections.emptyList()));
+    @SuppressWarnings("unchecked")
+    protected Map<Identifier, ? extends Recipe<?>> getSourceRecipes(RecipeManager recipeManager) {
+        return (Map<Identifier, ? extends Recipe<?>>) (Map) ((RecipeManagerAccessor) recipeManager).modern_industrialization_getAllOfType(this);
+    }
+
+    /**
+     * Convert the source recipes to the recipes of the index.
+     */
+    protected List<MachineRecipe> buildRecipes(Map<Identifier, ? extends Recipe<?>> source) {
+        List<MachineRecipe> recipes = new ArrayList<>();
+        for (Recipe<?> recipe : source.values()) {
+            recipes.add((MachineRecipe) recipe);
+        }
+        return recipes;
+    }
+
+    /**
+     * Serialize the recipes sorted by id, to check if they changed.
+     */
+    private byte[] computeFingerprint(List<MachineRecipe> recipes) {
+        List<MachineRecipe> sortedRecipes = new ArrayList<>(recipes);
+        sortedRecipes.sort(Comparator.comparing(r -> r.getId().toString()));
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        try {
+            for (MachineRecipe recipe : sortedRecipes) {
+                buf.writeIdentifier(recipe.getId());
+                write(buf, recipe);
+            }
+            byte[] fingerprint = new byte[buf.readableBytes()];
+            buf.readBytes(fingerprint);
+            return fingerprint;
+        } finally {
+            buf.release();
+        }
     }
 
     /**
-     * Get all recipes that are not using any input item.
+     * Get the recipes that use at most maxEu eu/t and whose inputs can all be
+     * matched by some of the items and fluids, see
+     * {@link MachineRecipeIndex#getCandidates}. The list is reused by the next call.
      */
-    public Collection<MachineRecipe> getFluidOnlyRecipes(ServerWorld world) {
-        updateRecipeCache(world);
-        return Collections.unmodifiableList(fluidOnlyRecipes);
+    public List<MachineRecipe> getCandidates(ServerWorld world, Collection<Item> items, Collection<Fluid> fluids, int maxEu) {
+        return getIndex(world).getCandidates(items, fluids, maxEu);
     }
 
     private final Identifier id;
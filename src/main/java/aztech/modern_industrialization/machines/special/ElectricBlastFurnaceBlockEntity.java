@@ -28,11 +28,8 @@ import aztech.modern_industrialization.machines.impl.MachineFactory;
 import aztech.modern_industrialization.machines.impl.multiblock.MultiblockMachineBlockEntity;
 import aztech.modern_industrialization.machines.impl.multiblock.MultiblockShape;
 import aztech.modern_industrialization.machines.impl.multiblock.MultiblockShapes;
-import aztech.modern_industrialization.machines.recipe.MachineRecipe;
 import aztech.modern_industrialization.material.MIMaterials;
 import java.util.Arrays;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 import net.minecraft.block.Block;
 
 public class ElectricBlastFurnaceBlockEntity extends MultiblockMachineBlockEntity {
@@ -45,8 +42,8 @@ public class ElectricBlastFurnaceBlockEntity extends MultiblockMachineBlockEntit
     }
 
     @Override
-    protected Iterable<MachineRecipe> getRecipes() {
-        return StreamSupport.stream(super.getRecipes().spliterator(), false).filter(r -> r.eu <= COIL_EU[selectedShape]).collect(Collectors.toList());
+    protected int getMaxRecipeEu() {
+        return Math.min(super.getMaxRecipeEu(), COIL_EU[selectedShape]);
     }
 
     static {
@@ -148,7 +148,7 @@ public class LargeSteamBoilerBlockEntity extends MultiblockMachineBlockEntity {
         markDirty();
 
         for (Direction direction : Direction.values()) {
-            autoExtractFluids(world, pos, direction);
+            autoExtractFluids(world, pos, direction, fluidInsertableCache);
         }
     }
 
@@ -106,7 +106,7 @@ public class SteamBoilerBlockEntity extends MachineBlockEntity {
         markDirty();
 
         for (Direction direction : Direction.values()) {
-            autoExtractFluids(world, pos, direction);
+            autoExtractFluids(world, pos, direction, fluidInsertableCache);
         }
     }
 
@@ -106,7 +106,7 @@ public class WaterPumpBlockEntity extends MachineBlockEntity {
         }
 
         for (Direction direction : Direction.values()) {
-            autoExtractFluids(world, pos, direction);
+            autoExtractFluids(world, pos, direction, fluidInsertableCache);
         }
     }
 
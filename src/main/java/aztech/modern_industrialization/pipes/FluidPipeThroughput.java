@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes;
+
+/**
+ * Millibuckets per tick that every connection of a fluid pipe may insert or
+ * extract, by pipe material.
+ */
+public class FluidPipeThroughput {
+    public int copper = 125;
+    public int tin = 125;
+    public int lead = 125;
+    public int bronze = 250;
+    public int iron = 250;
+    public int nickel = 250;
+    public int silver = 500;
+    public int gold = 500;
+    public int steel = 500;
+    public int aluminum = 1000;
+    public int electrum = 1000;
+
+    /**
+     * Raise every throughput to at least one millibucket per tick, otherwise the
+     * pipes would never move anything.
+     */
+    public void clamp() {
+        copper = Math.max(1, copper);
+        tin = Math.max(1, tin);
+        lead = Math.max(1, lead);
+        bronze = Math.max(1, bronze);
+        iron = Math.max(1, iron);
+        nickel = Math.max(1, nickel);
+        silver = Math.max(1, silver);
+        gold = Math.max(1, gold);
+        steel = Math.max(1, steel);
+        aluminum = Math.max(1, aluminum);
+        electrum = Math.max(1, electrum);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes;
+
+/**
+ * Items per second that every extract connection of an item pipe may move, by
+ * pipe material.
+ */
+public class ItemPipeThroughput {
+    public int copper = 16;
+    public int tin = 16;
+    public int lead = 16;
+    public int bronze = 32;
+    public int iron = 32;
+    public int nickel = 32;
+    public int silver = 64;
+    public int gold = 64;
+    public int steel = 64;
+    public int aluminum = 128;
+    public int electrum = 128;
+
+    /**
+     * Raise every throughput to at least one item per second, otherwise the pipes
+     * would never move anything.
+     */
+    public void clamp() {
+        copper = Math.max(1, copper);
+        tin = Math.max(1, tin);
+        lead = Math.max(1, lead);
+        bronze = Math.max(1, bronze);
+        iron = Math.max(1, iron);
+        nickel = Math.max(1, nickel);
+        silver = Math.max(1, silver);
+        gold = Math.max(1, gold);
+        steel = Math.max(1, steel);
+        aluminum = Math.max(1, aluminum);
+        electrum = Math.max(1, electrum);
+    }
+}
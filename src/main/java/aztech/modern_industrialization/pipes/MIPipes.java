@@ -26,6 +26,7 @@ package aztech.modern_industrialization.pipes;
 import static aztech.modern_industrialization.api.energy.CableTier.*;
 
 import alexiil.mc.lib.attributes.fluid.volume.FluidKeys;
+import aztech.modern_industrialization.MIConfig;
 import aztech.modern_industrialization.MIIdentifier;
 import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.api.energy.CableTier;
@@ -49,6 +50,7 @@ import nerdhub.cardinal.components.api.ComponentType;
 import nerdhub.cardinal.components.api.event.WorldComponentCallback;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.network.ServerSidePacketRegistry;
 import net.fabricmc.fabric.api.object.builder.v1.block.FabricBlockSettings;
 import net.fabricmc.fabric.api.screenhandler.v1.ScreenHandlerRegistry;
@@ -107,29 +109,31 @@ public class MIPipes implements ModInitializer {
         Registry.register(Registry.BLOCK, new MIIdentifier("pipe"), BLOCK_PIPE);
         BLOCK_ENTITY_TYPE_PIPE = Registry.register(Registry.BLOCK_ENTITY_TYPE, new MIIdentifier("pipe"),
                 BlockEntityType.Builder.create(PipeBlockEntity::new, BLOCK_PIPE).build(null));
-        registerFluidPipeType("gold", 255 << 24 | 255 << 16 | 225 << 8 | 0, 1000);
-        registerFluidPipeType("aluminum", 255 << 24 | 63 << 16 | 202 << 8 | 255, 1000);
-        registerFluidPipeType("steel", 255 << 24 | 63 << 16 | 63 << 8 | 63, 1000);
-        registerFluidPipeType("iron", 255 << 24 | 240 << 16 | 240 << 8 | 240, 1000);
-        registerFluidPipeType("bronze", 255 << 24 | 255 << 16 | 204 << 8, 1000);
-        registerFluidPipeType("tin", 255 << 24 | 203 << 16 | 228 << 8 | 228, 1000);
-        registerFluidPipeType("copper", 255 << 24 | 255 << 16 | 102 << 8, 1000);
-        registerFluidPipeType("lead", 255 << 24 | 0x4a2649, 1000);
-        registerFluidPipeType("nickel", 255 << 24 | 0xa9a9d4, 1000);
-        registerFluidPipeType("silver", 255 << 24 | 0x99ffff, 1000);
-        registerFluidPipeType("electrum", 255 << 24 | 0xefff5e, 1000);
-
-        registerItemPipeType("gold", 255 << 24 | 255 << 16 | 225 << 8 | 0);
-        registerItemPipeType("aluminum", 255 << 24 | 63 << 16 | 202 << 8 | 255);
-        registerItemPipeType("steel", 255 << 24 | 63 << 16 | 63 << 8 | 63);
-        registerItemPipeType("iron", 255 << 24 | 240 << 16 | 240 << 8 | 240);
-        registerItemPipeType("bronze", 255 << 24 | 255 << 16 | 204 << 8);
-        registerItemPipeType("tin", 255 << 24 | 203 << 16 | 228 << 8 | 228);
-        registerItemPipeType("copper", 255 << 24 | 255 << 16 | 102 << 8);
-        registerItemPipeType("lead", 255 << 24 | 0x4a2649);
-        registerItemPipeType("nickel", 255 << 24 | 0xa9a9d4);
-        registerItemPipeType("silver", 255 << 24 | 0x99ffff);
-        registerItemPipeType("electrum", 255 << 24 | 0xefff5e);
+        FluidPipeThroughput fluidThroughput = MIConfig.getConfig().fluidPipeThroughput;
+        registerFluidPipeType("gold", 255 << 24 | 255 << 16 | 225 << 8 | 0, 1000, fluidThroughput.gold);
+        registerFluidPipeType("aluminum", 255 << 24 | 63 << 16 | 202 << 8 | 255, 1000, fluidThroughput.aluminum);
+        registerFluidPipeType("steel", 255 << 24 | 63 << 16 | 63 << 8 | 63, 1000, fluidThroughput.steel);
+        registerFluidPipeType("iron", 255 << 24 | 240 << 16 | 240 << 8 | 240, 1000, fluidThroughput.iron);
+        registerFluidPipeType("bronze", 255 << 24 | 255 << 16 | 204 << 8, 1000, fluidThroughput.bronze);
+        registerFluidPipeType("tin", 255 << 24 | 203 << 16 | 228 << 8 | 228, 1000, fluidThroughput.tin);
+        registerFluidPipeType("copper", 255 << 24 | 255 << 16 | 102 << 8, 1000, fluidThroughput.copper);
+        registerFluidPipeType("lead", 255 << 24 | 0x4a2649, 1000, fluidThroughput.lead);
+        registerFluidPipeType("nickel", 255 << 24 | 0xa9a9d4, 1000, fluidThroughput.nickel);
+        registerFluidPipeType("silver", 255 << 24 | 0x99ffff, 1000, fluidThroughput.silver);
+        registerFluidPipeType("electrum", 255 << 24 | 0xefff5e, 1000, fluidThroughput.electrum);
+
+        ItemPipeThroughput itemThroughput = MIConfig.getConfig().itemPipeThroughput;
+        registerItemPipeType("gold", 255 << 24 | 255 << 16 | 225 << 8 | 0, itemThroughput.gold);
+        registerItemPipeType("aluminum", 255 << 24 | 63 << 16 | 202 << 8 | 255, itemThroughput.aluminum);
+        registerItemPipeType("steel", 255 << 24 | 63 << 16 | 63 << 8 | 63, itemThroughput.steel);
+        registerItemPipeType("iron", 255 << 24 | 240 << 16 | 240 << 8 | 240, itemThroughput.iron);
+        registerItemPipeType("bronze", 255 << 24 | 255 << 16 | 204 << 8, itemThroughput.bronze);
+        registerItemPipeType("tin", 255 << 24 | 203 << 16 | 228 << 8 | 228, itemThroughput.tin);
+        registerItemPipeType("copper", 255 << 24 | 255 << 16 | 102 << 8, itemThroughput.copper);
+        registerItemPipeType("lead", 255 << 24 | 0x4a2649, itemThroughput.lead);
+        registerItemPipeType("nickel", 255 << 24 | 0xa9a9d4, itemThroughput.nickel);
+        registerItemPipeType("silver", 255 << 24 | 0x99ffff, itemThroughput.silver);
+        registerItemPipeType("electrum", 255 << 24 | 0xefff5e, itemThroughput.electrum);
 
         registerElectricityPipeType("tin", 255 << 24 | 203 << 16 | 228 << 8 | 228, LV);
         registerElectricityPipeType("copper", 255 << 24 | 255 << 16 | 102 << 8, LV);
@@ -139,25 +143,31 @@ public class MIPipes implements ModInitializer {
 
         ServerTickEvents.START_SERVER_TICK.register(server -> {
             for (World world : server.getWorlds()) {
-                PIPE_NETWORKS.get(world).onServerTickStart();
+                PIPE_NETWORKS.get(world).tickNetworks();
             }
         });
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            for (World world : server.getWorlds()) {
+                PIPE_NETWORKS.get(world).updateDirtyPipes();
+            }
+        });
+        ServerWorldEvents.UNLOAD.register((server, world) -> PIPE_NETWORKS.get(world).close());
 
         registerPackets();
     }
 
-    public void registerFluidPipeType(String name, int color, int nodeCapacity) {
-        PipeNetworkType type = PipeNetworkType.register(new MIIdentifier("fluid_" + name), (id, data) -> new FluidNetwork(id, data, nodeCapacity),
-                FluidNetworkNode::new, color, false, FLUID_RENDERER);
+    public void registerFluidPipeType(String name, int color, int nodeCapacity, int transferRate) {
+        PipeNetworkType type = PipeNetworkType.register(new MIIdentifier("fluid_" + name),
+                (id, data) -> new FluidNetwork(id, data, nodeCapacity, transferRate), FluidNetworkNode::new, color, false, FLUID_RENDERER);
         PipeItem item = new PipeItem(new Item.Settings().group(ModernIndustrialization.ITEM_GROUP), type, new FluidNetworkData(FluidKeys.EMPTY));
         pipeItems.put(type, item);
         Registry.register(Registry.ITEM, new MIIdentifier("pipe_fluid_" + name), item);
         PIPE_MODEL_NAMES.add(new MIIdentifier("item/pipe_fluid_" + name));
     }
 
-    public void registerItemPipeType(String name, int color) {
-        PipeNetworkType type = PipeNetworkType.register(new MIIdentifier("item_" + name), ItemNetwork::new, ItemNetworkNode::new, color, true,
-                ITEM_RENDERER);
+    public void registerItemPipeType(String name, int color, int itemsPerSecond) {
+        PipeNetworkType type = PipeNetworkType.register(new MIIdentifier("item_" + name), (id, data) -> new ItemNetwork(id, data, itemsPerSecond),
+                ItemNetworkNode::new, color, true, ITEM_RENDERER);
         PipeItem item = new PipeItem(new Item.Settings().group(ModernIndustrialization.ITEM_GROUP), type, new ItemNetworkData());
         pipeItems.put(type, item);
         Registry.register(Registry.ITEM, new MIIdentifier("pipe_item_" + name), item);
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes.api;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * A pipe network that stores a quantity of its loaded nodes, like fluid or
+ * energy, in a single aggregate amount while it ticks. The amount is only split
+ * back into the nodes when they are saved, or when the nodes of the network
+ * change.
+ */
+public abstract class AggregatedPipeNetwork extends PipeNetwork {
+    /**
+     * Maximum number of ticks between two passes that mark every node dirty while
+     * the amount keeps changing.
+     */
+    private static final int DIRTY_INTERVAL = 100;
+    /**
+     * Number of ticks after the last pass before an idle network marks its nodes
+     * dirty. It is lower than the number of ticks before sleeping, so that the
+     * nodes are always marked dirty before the network falls asleep.
+     */
+    private static final int IDLE_DIRTY_DELAY = 10;
+
+    /**
+     * True if the amount of the loaded nodes is stored in {@link #amount} instead
+     * of in the nodes.
+     */
+    private boolean aggregated = false;
+    /**
+     * The total amount of the loaded nodes, only valid if aggregated.
+     */
+    public long amount;
+    private int loadedNodes;
+    private boolean nodesDirty = false;
+    private int ticksSinceDirtyPass = 0;
+
+    public AggregatedPipeNetwork(int id, PipeNetworkData data) {
+        super(id, data);
+    }
+
+    protected abstract long getNodeAmount(PipeNetworkNode node);
+
+    protected abstract void setNodeAmount(PipeNetworkNode node, long amount);
+
+    /**
+     * Called after the amounts of the loaded nodes were moved into
+     * {@link #amount}, to check it.
+     */
+    protected void onAggregated() {
+    }
+
+    /**
+     * Called for every loaded node that is marked dirty.
+     * 
+     * @return true if the node should also be synced with the client.
+     */
+    protected boolean onNodeMarkedDirty(PipeNetworkNode node) {
+        return false;
+    }
+
+    /**
+     * Move the amounts of the loaded nodes into the aggregate amount, if they are
+     * not already there.
+     */
+    protected final void aggregate() {
+        if (aggregated) {
+            return;
+        }
+        amount = 0;
+        loadedNodes = 0;
+        for (PipeNetworkNode node : nodes.values()) {
+            if (node != null) {
+                amount += getNodeAmount(node);
+                loadedNodes++;
+            }
+        }
+        aggregated = true;
+        onAggregated();
+    }
+
+    /**
+     * Split the aggregate amount evenly between the loaded nodes, if it's not
+     * already done.
+     */
+    public final void materialize() {
+        if (!aggregated) {
+            return;
+        }
+        long remainingAmount = amount;
+        int remainingNodes = loadedNodes;
+        for (PipeNetworkNode node : nodes.values()) {
+            if (node != null) {
+                long nodeAmount = remainingAmount / remainingNodes;
+                setNodeAmount(node, nodeAmount);
+                remainingAmount -= nodeAmount;
+                remainingNodes--;
+            }
+        }
+        aggregated = false;
+    }
+
+    protected final boolean isAggregated() {
+        return aggregated;
+    }
+
+    /**
+     * Get the number of loaded nodes, only valid if aggregated.
+     */
+    protected final int getLoadedNodes() {
+        return loadedNodes;
+    }
+
+    /**
+     * Get the amount of a loaded node, without splitting the aggregate amount. If
+     * the amount is aggregated, this is the share of the node rounded up, which
+     * can be one more than the amount the node gets once the amount is split.
+     */
+    public final long getNodeShare(PipeNetworkNode node) {
+        if (!aggregated || loadedNodes == 0) {
+            return getNodeAmount(node);
+        }
+        return (amount + loadedNodes - 1) / loadedNodes;
+    }
+
+    /**
+     * Must be called at the end of every tick. Keeps the network awake if the
+     * amount changed, and marks the loaded nodes dirty from time to time. The
+     * amounts of the nodes are only written when they are saved, but their chunks
+     * still need to be saved.
+     * 
+     * @param moved      True if the amount changed during this tick.
+     * @param forceDirty True if the nodes must be marked dirty right away.
+     */
+    protected final void finishTick(World world, boolean moved, boolean forceDirty) {
+        if (moved) {
+            wakeUp();
+            nodesDirty = true;
+        }
+        ticksSinceDirtyPass++;
+        if (forceDirty || nodesDirty && (ticksSinceDirtyPass >= DIRTY_INTERVAL || !moved && ticksSinceDirtyPass >= IDLE_DIRTY_DELAY)) {
+            nodesDirty = false;
+            ticksSinceDirtyPass = 0;
+            for (Long2ObjectMap.Entry<PipeNetworkNode> entry : nodes.long2ObjectEntrySet()) {
+                if (entry.getValue() != null) {
+                    boolean sync = onNodeMarkedDirty(entry.getValue());
+                    markNodeDirty(world, BlockPos.fromLong(entry.getLongKey()), sync);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onNodesChanging() {
+        materialize();
+    }
+}
@@ -23,8 +23,9 @@
  */
 package aztech.modern_industrialization.pipes.api;
 
-import java.util.HashMap;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.block.entity.BlockEntityClientSerializable;
+import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
@@ -34,11 +35,24 @@ import net.minecraft.world.World;
  * if your constructor was passed null.
  */
 public abstract class PipeNetwork {
+    /**
+     * How often a sleeping network is ticked anyway, to catch changes that didn't
+     * wake it up.
+     */
+    private static final int SLEEP_HEARTBEAT = 100;
+
     protected int id;
     public PipeNetworkManager manager;
     public PipeNetworkData data;
-    public Map<BlockPos, PipeNetworkNode> nodes = new HashMap<>();
-    public boolean ticked = false;
+    /**
+     * The nodes of this network, keyed by {@code BlockPos.asLong()}.
+     * The value is null if the node is not loaded.
+     */
+    public Long2ObjectOpenHashMap<PipeNetworkNode> nodes = new Long2ObjectOpenHashMap<>();
+    /**
+     * Number of ticks since this network last moved something.
+     */
+    private int idleTicks = 0;
 
     public PipeNetwork(int id, PipeNetworkData data) {
         this.id = id;
@@ -56,10 +70,87 @@ public abstract class PipeNetwork {
         return tag;
     }
 
+    /**
+     * Tick this network. Called once per server tick by the
+     * {@link PipeNetworksComponent} of the world, unless the network is sleeping.
+     * The network must call {@link #wakeUp} whenever it moves something, otherwise
+     * it will fall asleep.
+     */
     public void tick(World world) {
 
     }
 
+    /**
+     * Tick the network if it's awake, or if it's time for a heartbeat.
+     * 
+     * @return true if the network fell asleep during this tick.
+     */
+    final boolean scheduledTick(World world) {
+        boolean wasSleeping = isSleeping();
+        if (wasSleeping) {
+            if ((world.getTime() + id) % SLEEP_HEARTBEAT != 0) {
+                return false;
+            }
+        } else {
+            idleTicks++;
+        }
+        tick(world);
+        return !wasSleeping && isSleeping();
+    }
+
+    /**
+     * Number of ticks without any movement after which the network falls asleep.
+     */
+    protected int getTicksBeforeSleep() {
+        return 20;
+    }
+
+    public boolean isSleeping() {
+        return idleTicks >= getTicksBeforeSleep();
+    }
+
+    /**
+     * Wake up the network, or keep it awake if it's not sleeping.
+     */
+    public void wakeUp() {
+        boolean wasSleeping = isSleeping();
+        idleTicks = 0;
+        if (wasSleeping && manager != null) {
+            manager.onNetworkWakeUp(this);
+        }
+    }
+
+    /**
+     * Called by the manager right before nodes are added to or removed from this
+     * network, or loaded or unloaded. Networks that keep some state of their nodes
+     * at the network level must write it back into the nodes here.
+     */
+    protected void onNodesChanging() {
+
+    }
+
+    /**
+     * Called by the manager when nodes are added to or removed from this network,
+     * or when they are loaded or unloaded.
+     */
+    protected void onNodesChanged() {
+        wakeUp();
+    }
+
+    /**
+     * Mark the block entity of a loaded node as dirty, and sync it with the client
+     * if requested.
+     */
+    protected static void markNodeDirty(World world, BlockPos pos, boolean sync) {
+        BlockEntity blockEntity = world.getBlockEntity(pos);
+        if (blockEntity != null) {
+            blockEntity.markDirty();
+            if (sync && blockEntity instanceof BlockEntityClientSerializable) {
+                ((BlockEntityClientSerializable) blockEntity).sync();
+            }
+        }
+    }
+
     /**
      * Allow merging networks when the player explicitly requests to do so. When
      * this function is called, it must return a new PipeNetworkData without
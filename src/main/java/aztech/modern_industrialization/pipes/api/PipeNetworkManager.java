@@ -23,21 +23,112 @@
  */
 package aztech.modern_industrialization.pipes.api;
 
+import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.pipes.MIPipes;
-import aztech.modern_industrialization.util.NbtHelper;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.*;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntArrayTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
 
 public class PipeNetworkManager {
-    private Map<BlockPos, PipeNetwork> networkByBlock = new HashMap<>();
-    private Map<BlockPos, Set<Direction>> links = new HashMap<>(); // TODO: (de)serialize
+    private static final Direction[] DIRECTIONS = Direction.values();
+    /**
+     * Number of ticks between two checks for regions that can be moved to the
+     * topology store.
+     */
+    private static final int SWEEP_INTERVAL = 1200;
+    /**
+     * Number of consecutive checks that must find every node of a region unloaded
+     * before it is moved to the topology store.
+     */
+    private static final int EVICTION_SWEEPS = 5;
+
+    /**
+     * The network of every node, keyed by {@link BlockPos#asLong}.
+     */
+    private Long2ObjectOpenHashMap<PipeNetwork> networkByBlock = new Long2ObjectOpenHashMap<>();
+    /**
+     * The links of every node, keyed by {@link BlockPos#asLong}. Every link is
+     * stored as a bit in the mask, see {@link #hasLink(int, Direction)}.
+     */
+    private Long2ByteOpenHashMap links = new Long2ByteOpenHashMap();
     private Set<PipeNetwork> networks = new HashSet<>();
     private int nextNetworkId = 0;
     private PipeNetworkType type;
+    /**
+     * Check the whole state after every change. This is O(N), so it is only enabled
+     * with {@code -Dmodern_industrialization.checkPipeNetworks=true}.
+     */
+    private static final boolean CHECK_STATE_COHERENCE = Boolean.getBoolean("modern_industrialization.checkPipeNetworks");
+    /**
+     * Number of nested {@link #beginBatch} calls that were not committed yet.
+     */
+    private int batchDepth = 0;
+    /**
+     * The networks that contain a node whose links changed during the current
+     * batch. Their connected components are recomputed on commit.
+     */
+    private final Set<PipeNetwork> batchNetworks = new ReferenceOpenHashSet<>();
+    /**
+     * The links added during the current batch between nodes of different
+     * networks, as the position of one side and the direction of the link. They
+     * are removed again on commit if the data of the networks they connect can't
+     * be merged.
+     */
+    private final LongArrayList batchMergeLinks = new LongArrayList();
+    private final ByteArrayList batchMergeDirections = new ByteArrayList();
+    /**
+     * The nodes of every region of 32x32 chunks, keyed by {@link #getRegion}. The
+     * nodes are saved by region, see {@link #toTag}.
+     */
+    private final Long2ObjectOpenHashMap<LongOpenHashSet> nodesByRegion = new Long2ObjectOpenHashMap<>();
+    /**
+     * The last encoded nodes of every region.
+     */
+    private final Long2ObjectOpenHashMap<int[]> encodedRegions = new Long2ObjectOpenHashMap<>();
+    /**
+     * The regions that changed since they were last encoded.
+     */
+    private final LongOpenHashSet dirtyRegions = new LongOpenHashSet();
+    /**
+     * Optional store for the nodes of the regions that have been unloaded for a
+     * long time, see {@link #setTopologyStore}.
+     */
+    private PipeTopologyStore topologyStore = null;
+    /**
+     * The regions in the topology store that contain nodes of every network.
+     */
+    private final Map<PipeNetwork, LongOpenHashSet> evictedRegions = new Reference2ObjectOpenHashMap<>();
+    /**
+     * The regions that might only contain unloaded nodes, with the number of
+     * consecutive checks that found every node of the region unloaded. A region is
+     * added when one of its nodes is unloaded or decoded, and removed when one of
+     * its nodes is loaded, so the checks never scan the other regions.
+     */
+    private final Long2IntOpenHashMap unloadedSweeps = new Long2IntOpenHashMap();
+    private int ticksSinceSweep = 0;
+    /**
+     * Number of nodes that {@link #addLink} moved to another network, only used by
+     * the tests.
+     */
+    long movedNodes = 0;
+    private Consumer<PipeNetwork> wakeUpListener = network -> {
+    };
 
     public PipeNetworkManager(PipeNetworkType type) {
         this.type = type;
@@ -54,29 +145,54 @@ public class PipeNetworkManager {
             return;
 
         // Add links
-        BlockPos otherPos = pos.offset(direction);
-        links.get(pos).add(direction);
-        links.get(otherPos).add(direction.getOpposite());
-
-        // If the networks are different, we merge all nodes into `network`. We don't
-        // change other links.
-        PipeNetwork network = networkByBlock.get(pos);
-        PipeNetwork otherNetwork = networkByBlock.get(otherPos);
+        long posKey = pos.asLong();
+        long otherPosKey = BlockPos.offset(posKey, direction);
+        loadNetwork(networkByBlock.get(posKey));
+        loadNetwork(networkByBlock.get(otherPosKey));
+        addLinkBit(posKey, direction);
+        addLinkBit(otherPosKey, direction.getOpposite());
+        if (batchDepth > 0) {
+            if (networkByBlock.get(posKey) != networkByBlock.get(otherPosKey)) {
+                batchMergeLinks.add(posKey);
+                batchMergeDirections.add((byte) direction.getId());
+            }
+            addToBatch(networkByBlock.get(posKey));
+            addToBatch(networkByBlock.get(otherPosKey));
+            return;
+        }
+
+        // If the networks are different, we merge all nodes of the smaller network
+        // into the larger one. We don't change other links.
+        PipeNetwork network = networkByBlock.get(posKey);
+        PipeNetwork otherNetwork = networkByBlock.get(otherPosKey);
         if (network != otherNetwork) {
+            network.onNodesChanging();
+            otherNetwork.onNodesChanging();
+            PipeNetworkData mergedData = null;
             if (!network.data.equals(otherNetwork.data)) {
-                network.data = network.merge(otherNetwork);
+                mergedData = network.merge(otherNetwork);
+            }
+            if (network.nodes.size() < otherNetwork.nodes.size()) {
+                PipeNetwork tmp = network;
+                network = otherNetwork;
+                otherNetwork = tmp;
             }
-            for (Map.Entry<BlockPos, PipeNetworkNode> entry : otherNetwork.nodes.entrySet()) {
+            if (mergedData != null) {
+                network.data = mergedData;
+            }
+            for (Long2ObjectMap.Entry<PipeNetworkNode> entry : otherNetwork.nodes.long2ObjectEntrySet()) {
                 PipeNetworkNode node = entry.getValue();
-                BlockPos nodePos = entry.getKey();
+                long nodePos = entry.getLongKey();
                 if (node != null) {
                     node.network = network;
                 }
-                networkByBlock.put(nodePos, network);
+                setNetwork(nodePos, network);
                 network.nodes.put(nodePos, node);
             }
-            networks.remove(otherNetwork);
+            movedNodes += otherNetwork.nodes.size();
+            removeNetwork(otherNetwork);
         }
+        network.onNodesChanged();
         checkStateCoherence();
     }
 
@@ -89,64 +205,133 @@ public class PipeNetworkManager {
             return;
 
         // Remove links
-        BlockPos otherPos = pos.offset(direction);
-        links.get(pos).remove(direction);
-        links.get(otherPos).remove(direction.getOpposite());
-
-        // Run a DFS to mark all disconnected nodes.
-        PipeNetwork network = networkByBlock.get(pos);
-        Map<BlockPos, PipeNetworkNode> unvisitedNodes = new HashMap<>(network.nodes);
-
-        class Dfs {
-            private void dfs(BlockPos currentPos) {
-                // warning: don't try to use the return value of Map#remove, because it might be
-                // null if the node is not loaded.
-                if (!unvisitedNodes.containsKey(currentPos)) {
-                    return;
-                }
-                unvisitedNodes.remove(currentPos);
-                for (Direction direction : links.get(currentPos)) {
-                    dfs(currentPos.offset(direction));
-                }
-            }
+        long posKey = pos.asLong();
+        long otherPosKey = BlockPos.offset(posKey, direction);
+        loadNetwork(networkByBlock.get(posKey));
+        removeLinkBit(posKey, direction);
+        removeLinkBit(otherPosKey, direction.getOpposite());
+        if (batchDepth > 0) {
+            addToBatch(networkByBlock.get(posKey));
+            return;
         }
 
-        // Try to put all nodes in the current network
-        Dfs dfs = new Dfs();
-        dfs.dfs(pos);
-
-        // If it was not possible, create a new network and transfer all unvisitedNodes
-        // to it.
-        if (unvisitedNodes.size() > 0) {
+        // Search both sides of the removed link. If they are still connected, we have
+        // nothing to do. Otherwise, we move the smaller side to a new network.
+        PipeNetwork network = networkByBlock.get(posKey);
+        network.onNodesChanging();
+        network.onNodesChanged();
+        LongSet splitNodes = findSmallerSide(posKey, otherPosKey);
+        if (splitNodes != null) {
             PipeNetwork newNetwork = createNetwork(network.data.clone());
-            for (Map.Entry<BlockPos, PipeNetworkNode> entry : unvisitedNodes.entrySet()) {
-                PipeNetworkNode node = entry.getValue();
-                BlockPos nodePos = entry.getKey();
+            LongIterator it = splitNodes.iterator();
+            while (it.hasNext()) {
+                long nodePos = it.nextLong();
+                // warning: the node might be null if it is not loaded.
+                PipeNetworkNode node = network.nodes.remove(nodePos);
                 if (node != null) {
                     node.network = newNetwork;
                 }
-                networkByBlock.put(nodePos, newNetwork);
+                setNetwork(nodePos, newNetwork);
                 newNetwork.nodes.put(nodePos, node);
-                network.nodes.remove(nodePos);
             }
         }
         checkStateCoherence();
     }
 
+    /**
+     * Run a BFS from both positions at the same time, one node at a time. The
+     * search stops as soon as one side reaches a node visited by the other side,
+     * or when one side runs out of nodes.
+     * 
+     * @return null if both positions are still connected, or all the nodes of the
+     *         smaller side otherwise.
+     */
+    private LongSet findSmallerSide(long first, long second) {
+        SplitSearch firstSearch = new SplitSearch(first);
+        SplitSearch secondSearch = new SplitSearch(second);
+        while (true) {
+            if (firstSearch.step(secondSearch))
+                return null;
+            if (firstSearch.isDone())
+                return firstSearch.visited;
+            if (secondSearch.step(firstSearch))
+                return null;
+            if (secondSearch.isDone())
+                return secondSearch.visited;
+        }
+    }
+
+    private class SplitSearch {
+        private final LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+        private final LongOpenHashSet visited = new LongOpenHashSet();
+
+        private SplitSearch(long start) {
+            queue.enqueue(start);
+            visited.add(start);
+        }
+
+        /**
+         * Visit the next node.
+         * 
+         * @return true if the other search was reached.
+         */
+        private boolean step(SplitSearch other) {
+            long currentPos = queue.dequeueLong();
+            int mask = links.get(currentPos);
+            for (Direction direction : DIRECTIONS) {
+                if (hasLink(mask, direction)) {
+                    long nextPos = BlockPos.offset(currentPos, direction);
+                    if (other.visited.contains(nextPos)) {
+                        return true;
+                    }
+                    if (visited.add(nextPos)) {
+                        queue.enqueue(nextPos);
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean isDone() {
+            return queue.isEmpty();
+        }
+    }
+
     /**
      * Check if a link exists. A node must exist at pos.
      */
     public boolean hasLink(BlockPos pos, Direction direction) {
-        return links.get(pos).contains(direction);
+        loadRegionOf(pos.asLong());
+        return hasLink(links.get(pos.asLong()), direction);
+    }
+
+    /**
+     * Check if a link mask returned by {@link #getNodeLinks} contains a direction.
+     */
+    public static boolean hasLink(int linkMask, Direction direction) {
+        return (linkMask & (1 << direction.getId())) != 0;
+    }
+
+    private void addLinkBit(long pos, Direction direction) {
+        links.put(pos, (byte) (links.get(pos) | (1 << direction.getId())));
+        markRegionDirty(pos);
+    }
+
+    private void removeLinkBit(long pos, Direction direction) {
+        links.put(pos, (byte) (links.get(pos) & ~(1 << direction.getId())));
+        markRegionDirty(pos);
     }
 
     /**
      * Check if a link would be possible. A node must exist at pos.
      */
     public boolean canLink(BlockPos pos, Direction direction, boolean forceLink) {
-        BlockPos otherPos = pos.offset(direction);
-        PipeNetwork network = networkByBlock.get(pos);
-        PipeNetwork otherNetwork = networkByBlock.get(otherPos);
+        long posKey = pos.asLong();
+        long otherPosKey = BlockPos.offset(posKey, direction);
+        loadRegionOf(posKey);
+        loadRegionOf(otherPosKey);
+        PipeNetwork network = networkByBlock.get(posKey);
+        PipeNetwork otherNetwork = networkByBlock.get(otherPosKey);
         return otherNetwork != null && (network.data.equals(otherNetwork.data) || forceLink && network.merge(otherNetwork) != null);
     }
 
@@ -154,38 +339,348 @@ public class PipeNetworkManager {
      * Add a node and create a new network for it.
      */
     public void addNode(PipeNetworkNode node, BlockPos pos, PipeNetworkData data) {
-        if (networkByBlock.containsKey(pos))
+        long posKey = pos.asLong();
+        loadRegionOf(posKey);
+        if (networkByBlock.containsKey(posKey))
             throw new IllegalArgumentException("Cannot add a node that is already in the network.");
 
         PipeNetwork network = createNetwork(data.clone());
         if (node != null) {
             node.network = network;
         }
-        networkByBlock.put(pos.toImmutable(), network);
-        network.nodes.put(pos.toImmutable(), node);
-        links.put(pos.toImmutable(), new HashSet<>());
-        checkStateCoherence();
+        setNetwork(posKey, network);
+        network.nodes.put(posKey, node);
+        links.put(posKey, (byte) 0);
+        addToRegion(posKey);
+        if (batchDepth == 0) {
+            checkStateCoherence();
+        }
     }
 
     /**
      * Remove a node and its network. Will remove all remaining links.
      */
     public void removeNode(BlockPos pos) {
-        for (Direction direction : Direction.values()) {
+        for (Direction direction : DIRECTIONS) {
             removeLink(pos, direction);
         }
 
-        PipeNetwork network = networkByBlock.remove(pos);
-        networks.remove(network);
-        links.remove(pos);
+        long posKey = pos.asLong();
+        loadRegionOf(posKey);
+        PipeNetwork network = networkByBlock.remove(posKey);
+        loadNetwork(network);
+        links.remove(posKey);
+        removeFromRegion(posKey);
+        if (batchDepth > 0) {
+            // The network was not split, so it might still contain other nodes.
+            addToBatch(network);
+            network.nodes.remove(posKey);
+            if (network.nodes.isEmpty()) {
+                removeNetwork(network);
+                batchNetworks.remove(network);
+            }
+            return;
+        }
+        removeNetwork(network);
+        checkStateCoherence();
+    }
+
+    /**
+     * Start a batch of topology changes. Until the matching {@link #commit}, links
+     * are added and removed without merging or splitting networks, and the
+     * networks are recomputed once when the batch is committed. Batches can be
+     * nested, only the outermost commit recomputes the networks.
+     * <p>
+     * Networks must not be ticked, and nodes must not be loaded or unloaded, while
+     * a batch is in progress.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Commit the current batch of topology changes, see {@link #beginBatch}. A link
+     * added during the batch is removed again if it joins networks whose data can't
+     * be merged, like {@link #addLink} would have refused it.
+     * 
+     * @return The positions of both sides of every removed link, so that the caller
+     *         can update the connections of these pipes. Always empty for a nested
+     *         commit.
+     */
+    public LongSet commit() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("Cannot commit a pipe network batch that was not started.");
+        }
+        if (--batchDepth > 0) {
+            return LongSets.EMPTY_SET;
+        }
+
+        // Find the connected components of the changed networks. Links never cross
+        // the boundary of these networks, because both sides of a changed link were
+        // added to the batch.
+        List<PipeNetwork> oldNetworks = new ArrayList<>(batchNetworks);
+        batchNetworks.clear();
+        LongOpenHashSet visited = new LongOpenHashSet();
+        List<LongArrayList> components = new ArrayList<>();
+        for (PipeNetwork network : oldNetworks) {
+            findComponents(network.nodes.keySet().iterator(), visited, components);
+        }
+
+        // Fold the data of the old networks of every component. If some data can't be
+        // merged, the links that connected different networks during the batch are
+        // replayed in order, and only the links that addLink would have refused are
+        // removed. The component is then split back. If a part still can't be merged,
+        // all its links that connected different networks are removed, so that its
+        // parts only contain nodes of a single old network.
+        LongOpenHashSet droppedLinks = new LongOpenHashSet();
+        Set<LongArrayList> replayedComponents = new ReferenceOpenHashSet<>();
+        List<PipeNetworkData> componentData = new ArrayList<>();
+        for (int c = 0; c < components.size(); ++c) {
+            PipeNetworkData data = mergeComponentData(components.get(c));
+            if (data == null) {
+                LongArrayList component = components.remove(c--);
+                int oldSize = components.size();
+                if (replayedComponents.contains(component)) {
+                    removeMergeLinks(component, droppedLinks);
+                    findComponents(component.iterator(), new LongOpenHashSet(), components);
+                } else {
+                    replayMergeLinks(component, droppedLinks);
+                    findComponents(component.iterator(), new LongOpenHashSet(), components);
+                    replayedComponents.addAll(components.subList(oldSize, components.size()));
+                }
+            } else {
+                componentData.add(data);
+            }
+        }
+        batchMergeLinks.clear();
+        batchMergeDirections.clear();
+
+        // Every component reuses the old network that has the most nodes in it, if
+        // that network was not already reused by another component. The data is
+        // merged before any node is moved, because merging may look at the nodes.
+        Set<PipeNetwork> reused = new ReferenceOpenHashSet<>();
+        List<PipeNetwork> componentNetworks = new ArrayList<>();
+        List<PipeNetworkNode> componentNodes = new ArrayList<>();
+        for (LongArrayList component : components) {
+            Reference2IntOpenHashMap<PipeNetwork> counts = new Reference2IntOpenHashMap<>();
+            for (int i = 0; i < component.size(); ++i) {
+                counts.addTo(networkByBlock.get(component.getLong(i)), 1);
+            }
+            PipeNetwork host = null;
+            for (Reference2IntMap.Entry<PipeNetwork> entry : counts.reference2IntEntrySet()) {
+                PipeNetwork network = entry.getKey();
+                if (!reused.contains(network) && (host == null || entry.getIntValue() > counts.getInt(host))) {
+                    host = network;
+                }
+            }
+            if (host != null) {
+                reused.add(host);
+            }
+            componentNetworks.add(host);
+        }
+        for (int c = 0; c < components.size(); ++c) {
+            LongArrayList component = components.get(c);
+            for (int i = 0; i < component.size(); ++i) {
+                long nodePos = component.getLong(i);
+                componentNodes.add(networkByBlock.get(nodePos).nodes.get(nodePos));
+            }
+        }
+
+        // Move the nodes to their new networks.
+        for (PipeNetwork network : oldNetworks) {
+            if (reused.contains(network)) {
+                network.nodes.clear();
+            } else {
+                removeNetwork(network);
+            }
+        }
+        int nodeIndex = 0;
+        for (int c = 0; c < components.size(); ++c) {
+            PipeNetwork network = componentNetworks.get(c);
+            if (network == null) {
+                network = createNetwork(componentData.get(c).clone());
+            } else if (network.data != componentData.get(c)) {
+                // The data might belong to another old network that is reused as well.
+                network.data = componentData.get(c).clone();
+            }
+            LongArrayList component = components.get(c);
+            for (int i = 0; i < component.size(); ++i) {
+                long nodePos = component.getLong(i);
+                PipeNetworkNode node = componentNodes.get(nodeIndex++);
+                // warning: the node might be null if it is not loaded.
+                if (node != null) {
+                    node.network = network;
+                }
+                setNetwork(nodePos, network);
+                network.nodes.put(nodePos, node);
+            }
+            network.onNodesChanged();
+        }
         checkStateCoherence();
+        return droppedLinks;
+    }
+
+    /**
+     * Remember that a network changed during the current batch.
+     */
+    private void addToBatch(PipeNetwork network) {
+        if (batchNetworks.add(network)) {
+            loadNetwork(network);
+            network.onNodesChanging();
+        }
+    }
+
+    /**
+     * Find the connected components of the nodes that were not visited yet, and
+     * add them to the list.
+     */
+    private void findComponents(LongIterator starts, LongOpenHashSet visited, List<LongArrayList> components) {
+        LongArrayFIFOQueue queue = new LongArrayFIFOQueue();
+        while (starts.hasNext()) {
+            long start = starts.nextLong();
+            if (!visited.add(start)) {
+                continue;
+            }
+            LongArrayList component = new LongArrayList();
+            queue.enqueue(start);
+            while (!queue.isEmpty()) {
+                long currentPos = queue.dequeueLong();
+                component.add(currentPos);
+                int mask = links.get(currentPos);
+                for (Direction direction : DIRECTIONS) {
+                    if (hasLink(mask, direction)) {
+                        long nextPos = BlockPos.offset(currentPos, direction);
+                        if (visited.add(nextPos)) {
+                            queue.enqueue(nextPos);
+                        }
+                    }
+                }
+            }
+            components.add(component);
+        }
+    }
+
+    /**
+     * Merge the data of all the old networks of a component, one network at a
+     * time.
+     * 
+     * @return The merged data, or null if some data can't be merged.
+     */
+    private PipeNetworkData mergeComponentData(LongArrayList component) {
+        Set<PipeNetwork> componentNetworks = new ReferenceOpenHashSet<>();
+        for (int i = 0; i < component.size(); ++i) {
+            componentNetworks.add(networkByBlock.get(component.getLong(i)));
+        }
+        // The network whose data was kept by the last merge, so that the next merge
+        // sees the merged data.
+        PipeNetwork dataNetwork = networkByBlock.get(component.getLong(0));
+        PipeNetworkData data = dataNetwork.data;
+        for (PipeNetwork network : componentNetworks) {
+            if (network == dataNetwork || data.equals(network.data)) {
+                continue;
+            }
+            PipeNetworkData mergedData = dataNetwork.merge(network);
+            if (mergedData == null) {
+                return null;
+            }
+            if (mergedData.equals(network.data)) {
+                dataNetwork = network;
+            }
+            data = mergedData;
+        }
+        return data;
+    }
+
+    /**
+     * Replay the links that connected different networks during the current batch
+     * and that have a side in the component, in the order they were added. The old
+     * networks joined by the replayed links are tracked with a union-find, and a
+     * link is removed if the data of the two groups it joins can't be merged.
+     * 
+     * @param droppedLinks The positions of both sides of the removed links are
+     *                     added to this set.
+     */
+    private void replayMergeLinks(LongArrayList component, LongSet droppedLinks) {
+        LongOpenHashSet nodes = new LongOpenHashSet(component);
+        // The parent of every old network in the union-find, and the network whose
+        // data is kept for every group, by the root of the group.
+        Map<PipeNetwork, PipeNetwork> parents = new Reference2ReferenceOpenHashMap<>();
+        Map<PipeNetwork, PipeNetwork> dataNetworks = new Reference2ReferenceOpenHashMap<>();
+        for (int i = 0; i < batchMergeLinks.size(); ++i) {
+            long posKey = batchMergeLinks.getLong(i);
+            Direction direction = Direction.byId(batchMergeDirections.getByte(i));
+            if (!nodes.contains(posKey) || !hasLink(links.get(posKey), direction)) {
+                continue;
+            }
+            long otherPosKey = BlockPos.offset(posKey, direction);
+            PipeNetwork root = findRoot(parents, networkByBlock.get(posKey));
+            PipeNetwork otherRoot = findRoot(parents, networkByBlock.get(otherPosKey));
+            if (root == otherRoot) {
+                continue;
+            }
+            PipeNetwork dataNetwork = dataNetworks.getOrDefault(root, root);
+            PipeNetwork otherDataNetwork = dataNetworks.getOrDefault(otherRoot, otherRoot);
+            if (!dataNetwork.data.equals(otherDataNetwork.data)) {
+                PipeNetworkData mergedData = dataNetwork.merge(otherDataNetwork);
+                if (mergedData == null) {
+                    removeLinkBit(posKey, direction);
+                    removeLinkBit(otherPosKey, direction.getOpposite());
+                    droppedLinks.add(posKey);
+                    droppedLinks.add(otherPosKey);
+                    continue;
+                }
+                if (mergedData.equals(otherDataNetwork.data)) {
+                    dataNetwork = otherDataNetwork;
+                }
+            }
+            parents.put(otherRoot, root);
+            dataNetworks.remove(otherRoot);
+            dataNetworks.put(root, dataNetwork);
+        }
+    }
+
+    private static PipeNetwork findRoot(Map<PipeNetwork, PipeNetwork> parents, PipeNetwork network) {
+        PipeNetwork root = network;
+        for (PipeNetwork parent; (parent = parents.get(root)) != null;) {
+            root = parent;
+        }
+        // Path compression.
+        while (network != root) {
+            PipeNetwork parent = parents.put(network, root);
+            network = parent;
+        }
+        return root;
+    }
+
+    /**
+     * Remove the links that connected different networks during the current batch
+     * and that have a side in the component.
+     * 
+     * @param droppedLinks The positions of both sides of the removed links are
+     *                     added to this set.
+     */
+    private void removeMergeLinks(LongArrayList component, LongSet droppedLinks) {
+        LongOpenHashSet nodes = new LongOpenHashSet(component);
+        for (int i = 0; i < batchMergeLinks.size(); ++i) {
+            long posKey = batchMergeLinks.getLong(i);
+            Direction direction = Direction.byId(batchMergeDirections.getByte(i));
+            if (nodes.contains(posKey) && hasLink(links.get(posKey), direction)) {
+                long otherPosKey = BlockPos.offset(posKey, direction);
+                removeLinkBit(posKey, direction);
+                removeLinkBit(otherPosKey, direction.getOpposite());
+                droppedLinks.add(posKey);
+                droppedLinks.add(otherPosKey);
+            }
+        }
     }
 
     /**
      * Should be called when a node is loaded, it will link the node to its network.
      */
     public void nodeLoaded(PipeNetworkNode node, BlockPos pos) {
-        PipeNetwork network = networkByBlock.get(pos);
+        loadRegionOf(pos.asLong());
+        unloadedSweeps.remove(getRegion(pos.asLong()));
+        PipeNetwork network = networkByBlock.get(pos.asLong());
         if (network == null) {
             // The network is null! That probably means that the node doesn't exist, e.g.
             // because a pipe was moved with Carrier.
@@ -193,12 +688,14 @@ public class PipeNetworkManager {
             // TODO: refactor this in an api
             PipeNetworkData data = MIPipes.INSTANCE.getPipeItem(getType()).defaultData;
             addNode(node, pos, data);
-            for (Direction direction : Direction.values()) {
+            for (Direction direction : DIRECTIONS) {
                 addLink(pos, direction, false);
             }
         } else {
+            network.onNodesChanging();
             node.network = network;
-            network.nodes.put(pos.toImmutable(), node);
+            network.nodes.put(pos.asLong(), node);
+            network.onNodesChanged();
         }
         checkStateCoherence();
     }
@@ -208,7 +705,10 @@ public class PipeNetworkManager {
      * network.
      */
     public void nodeUnloaded(PipeNetworkNode node, BlockPos pos) {
-        node.network.nodes.put(pos.toImmutable(), null);
+        addUnloadedCandidate(pos.asLong());
+        node.network.onNodesChanging();
+        node.network.nodes.put(pos.asLong(), null);
+        node.network.onNodesChanged();
         checkStateCoherence();
     }
 
@@ -220,16 +720,50 @@ public class PipeNetworkManager {
         network.manager = this;
         nextNetworkId++;
         networks.add(network);
-        checkStateCoherence();
+        if (batchDepth == 0) {
+            checkStateCoherence();
+        }
         return network;
     }
 
+    private void removeNetwork(PipeNetwork network) {
+        networks.remove(network);
+        if (network.isSleeping()) {
+            wakeUpListener.accept(network);
+        }
+    }
+
     /**
-     * Mark the networks as unticked.
+     * Set the listener that is called for every sleeping network that is woken up
+     * or removed, see {@link #tickNetworks}.
      */
-    public void markNetworksAsUnticked() {
-        for (PipeNetwork network : networks) {
-            network.ticked = false;
+    public void setWakeUpListener(Consumer<PipeNetwork> wakeUpListener) {
+        this.wakeUpListener = wakeUpListener;
+    }
+
+    void onNetworkWakeUp(PipeNetwork network) {
+        wakeUpListener.accept(network);
+    }
+
+    /**
+     * Tick every network that is awake.
+     * 
+     * @param sleepListener Called for every network that falls asleep.
+     */
+    public void tickNetworks(World world, Consumer<PipeNetwork> sleepListener) {
+        if (batchDepth > 0) {
+            throw new IllegalStateException("Cannot tick pipe networks while a batch is in progress.");
+        }
+        if (topologyStore != null && ++ticksSinceSweep >= SWEEP_INTERVAL) {
+            ticksSinceSweep = 0;
+            evictUnloadedRegions();
+        }
+
+        // Copy the networks, in case a tick causes a topology change.
+        for (PipeNetwork network : new ArrayList<>(networks)) {
+            if (networks.contains(network) && network.scheduledTick(world)) {
+                sleepListener.accept(network);
+            }
         }
     }
 
@@ -244,17 +778,16 @@ public class PipeNetworkManager {
         }
 
         // networkByBlock and links
-        Map<Integer, PipeNetwork> networkIds = new HashMap<>();
+        Int2ObjectOpenHashMap<PipeNetwork> networkIds = new Int2ObjectOpenHashMap<>();
         for (PipeNetwork network : networks) {
             networkIds.put(network.id, network);
         }
-        int[] data = tag.getIntArray("networkByBlock");
-        for (int i = 0; i < data.length / 5; i++) {
-            PipeNetwork network = networkIds.get(data[5 * i + 3]);
-            BlockPos pos = new BlockPos(data[5 * i], data[5 * i + 1], data[5 * i + 2]);
-            networkByBlock.put(pos, network);
-            network.nodes.put(pos, null);
-            links.put(pos, new HashSet<Direction>(Arrays.asList(NbtHelper.decodeDirections((byte) data[5 * i + 4]))));
+        if (tag.contains("networkByBlock")) {
+            // Saves from before the nodes were split in regions
+            decodeNodes(tag.getIntArray("networkByBlock"), networkIds);
+        }
+        for (Tag regionTag : tag.getList("networkRegions", new IntArrayTag(new int[0]).getType())) {
+            decodeNodes(((IntArrayTag) regionTag).getIntArray(), networkIds);
         }
 
         // nextNetworkId
@@ -272,50 +805,280 @@ public class PipeNetworkManager {
         networksTag.addAll(networksTags);
         tag.put("networks", networksTag);
 
-        // networkByBlock and links, every entry is identified by five consecutive
-        // integers: x, y, z, network id, encoded links
-        int[] networkByBlockData = new int[networkByBlock.size() * 5];
-        int i = 0;
-        for (Map.Entry<BlockPos, PipeNetwork> entry : networkByBlock.entrySet()) {
-            networkByBlockData[i++] = entry.getKey().getX();
-            networkByBlockData[i++] = entry.getKey().getY();
-            networkByBlockData[i++] = entry.getKey().getZ();
-            networkByBlockData[i++] = entry.getValue().id;
-            networkByBlockData[i++] = NbtHelper.encodeDirections(links.get(entry.getKey()));
+        // networkByBlock and links, split by region. Only the regions that changed
+        // since the last save are encoded again.
+        LongIterator it = dirtyRegions.iterator();
+        while (it.hasNext()) {
+            long region = it.nextLong();
+            LongOpenHashSet regionNodes = nodesByRegion.get(region);
+            if (regionNodes == null) {
+                encodedRegions.remove(region);
+            } else {
+                encodedRegions.put(region, encodeNodes(regionNodes));
+            }
         }
-        tag.putIntArray("networkByBlock", networkByBlockData);
+        dirtyRegions.clear();
+        ListTag regionsTag = new ListTag();
+        for (int[] regionData : encodedRegions.values()) {
+            regionsTag.add(new IntArrayTag(regionData));
+        }
+        if (topologyStore != null) {
+            LongIterator evictedIt = topologyStore.getKeys().iterator();
+            while (evictedIt.hasNext()) {
+                regionsTag.add(topologyStore.getTag(evictedIt.nextLong()));
+            }
+        }
+        tag.put("networkRegions", regionsTag);
 
         // nextNetworkId
         tag.putInt("nextNetworkId", nextNetworkId);
-        checkStateCoherence();
         return tag;
     }
 
+    /**
+     * Encode nodes as five consecutive integers per node: x, y, z, network id,
+     * encoded links.
+     */
+    private int[] encodeNodes(LongSet nodes) {
+        int[] data = new int[nodes.size() * 5];
+        int i = 0;
+        LongIterator it = nodes.iterator();
+        while (it.hasNext()) {
+            long pos = it.nextLong();
+            data[i++] = BlockPos.unpackLongX(pos);
+            data[i++] = BlockPos.unpackLongY(pos);
+            data[i++] = BlockPos.unpackLongZ(pos);
+            data[i++] = networkByBlock.get(pos).id;
+            data[i++] = links.get(pos);
+        }
+        return data;
+    }
+
+    private void decodeNodes(int[] data, Int2ObjectOpenHashMap<PipeNetwork> networkIds) {
+        for (int i = 0; i < data.length / 5; i++) {
+            PipeNetwork network = networkIds.get(data[5 * i + 3]);
+            long pos = BlockPos.asLong(data[5 * i], data[5 * i + 1], data[5 * i + 2]);
+            setNetwork(pos, network);
+            network.nodes.put(pos, null);
+            links.put(pos, (byte) data[5 * i + 4]);
+            addToRegion(pos);
+            addUnloadedCandidate(pos);
+        }
+    }
+
+    /**
+     * Get the region of 32x32 chunks that contains a position.
+     */
+    private static long getRegion(long pos) {
+        return ChunkPos.toLong(BlockPos.unpackLongX(pos) >> 9, BlockPos.unpackLongZ(pos) >> 9);
+    }
+
+    private void setNetwork(long pos, PipeNetwork network) {
+        networkByBlock.put(pos, network);
+        markRegionDirty(pos);
+    }
+
+    private void markRegionDirty(long pos) {
+        dirtyRegions.add(getRegion(pos));
+    }
+
+    private void addToRegion(long pos) {
+        long region = getRegion(pos);
+        LongOpenHashSet regionNodes = nodesByRegion.get(region);
+        if (regionNodes == null) {
+            regionNodes = new LongOpenHashSet();
+            nodesByRegion.put(region, regionNodes);
+        }
+        regionNodes.add(pos);
+        dirtyRegions.add(region);
+    }
+
+    private void removeFromRegion(long pos) {
+        long region = getRegion(pos);
+        LongOpenHashSet regionNodes = nodesByRegion.get(region);
+        regionNodes.remove(pos);
+        if (regionNodes.isEmpty()) {
+            nodesByRegion.remove(region);
+        }
+        dirtyRegions.add(region);
+    }
+
+    /**
+     * Set the store that receives the nodes of the regions that have been unloaded
+     * for a long time. Their nodes are moved back to memory as soon as they are
+     * needed: when a node of the region is loaded, or when a network that has nodes
+     * in the region changes.
+     */
+    public void setTopologyStore(PipeTopologyStore topologyStore) {
+        this.topologyStore = topologyStore;
+    }
+
+    /**
+     * Move every region back to memory and close the topology store, if there is
+     * one.
+     */
+    public void closeTopologyStore() throws IOException {
+        if (topologyStore != null) {
+            for (long region : topologyStore.getKeys().toLongArray()) {
+                loadRegion(region);
+            }
+            topologyStore.close();
+            topologyStore = null;
+        }
+    }
+
+    /**
+     * Remember that the region of an unloaded node might only contain unloaded
+     * nodes.
+     */
+    private void addUnloadedCandidate(long pos) {
+        if (topologyStore != null) {
+            long region = getRegion(pos);
+            if (!unloadedSweeps.containsKey(region)) {
+                unloadedSweeps.put(region, 0);
+            }
+        }
+    }
+
+    /**
+     * Move the regions whose nodes have all been unloaded for the last
+     * {@link #EVICTION_SWEEPS} checks to the topology store. Only the candidate
+     * regions in {@link #unloadedSweeps} are checked.
+     */
+    private void evictUnloadedRegions() {
+        if (batchDepth > 0) {
+            return;
+        }
+        LongArrayList evicted = new LongArrayList();
+        for (long region : unloadedSweeps.keySet().toLongArray()) {
+            LongOpenHashSet regionNodes = nodesByRegion.get(region);
+            boolean unloaded = regionNodes != null;
+            if (unloaded) {
+                LongIterator it = regionNodes.iterator();
+                while (it.hasNext()) {
+                    long pos = it.nextLong();
+                    if (networkByBlock.get(pos).nodes.get(pos) != null) {
+                        unloaded = false;
+                        break;
+                    }
+                }
+            }
+            if (!unloaded) {
+                // The region will be added again when one of its loaded nodes is unloaded.
+                unloadedSweeps.remove(region);
+            } else if (unloadedSweeps.addTo(region, 1) + 1 >= EVICTION_SWEEPS) {
+                evicted.add(region);
+            }
+        }
+        for (int i = 0; i < evicted.size(); ++i) {
+            evictRegion(evicted.getLong(i));
+        }
+    }
+
+    private void evictRegion(long region) {
+        LongOpenHashSet regionNodes = nodesByRegion.get(region);
+        try {
+            topologyStore.write(region, encodeNodes(regionNodes));
+        } catch (IOException e) {
+            ModernIndustrialization.LOGGER.error("Could not move pipe network nodes to the topology store", e);
+            return;
+        }
+        LongIterator it = regionNodes.iterator();
+        while (it.hasNext()) {
+            long pos = it.nextLong();
+            PipeNetwork network = networkByBlock.remove(pos);
+            network.nodes.remove(pos);
+            links.remove(pos);
+            evictedRegions.computeIfAbsent(network, n -> new LongOpenHashSet()).add(region);
+        }
+        nodesByRegion.remove(region);
+        encodedRegions.remove(region);
+        dirtyRegions.remove(region);
+        unloadedSweeps.remove(region);
+    }
+
+    /**
+     * Move a region from the topology store back to memory.
+     */
+    private void loadRegion(long region) {
+        int[] data = topologyStore.read(region);
+        topologyStore.remove(region);
+        Int2ObjectOpenHashMap<PipeNetwork> networkIds = new Int2ObjectOpenHashMap<>();
+        for (PipeNetwork network : evictedRegions.keySet()) {
+            networkIds.put(network.id, network);
+        }
+        decodeNodes(data, networkIds);
+        for (int i = 0; i < data.length / 5; i++) {
+            PipeNetwork network = networkIds.get(data[5 * i + 3]);
+            LongOpenHashSet regions = evictedRegions.get(network);
+            if (regions != null) {
+                regions.remove(region);
+                if (regions.isEmpty()) {
+                    evictedRegions.remove(network);
+                }
+            }
+        }
+    }
+
+    private void loadRegionOf(long pos) {
+        if (topologyStore != null && !topologyStore.isEmpty()) {
+            long region = getRegion(pos);
+            if (topologyStore.contains(region)) {
+                loadRegion(region);
+            }
+        }
+    }
+
+    /**
+     * Move every node of a network back to memory, before its topology is changed
+     * or traversed.
+     */
+    private void loadNetwork(PipeNetwork network) {
+        LongOpenHashSet regions = evictedRegions.get(network);
+        if (regions != null) {
+            for (long region : regions.toLongArray()) {
+                loadRegion(region);
+            }
+        }
+    }
+
     public PipeNetworkType getType() {
         return type;
     }
 
-    public Set<Direction> getNodeLinks(BlockPos pos) {
-        return new HashSet<>(links.get(pos));
+    /**
+     * Get the links of a node as a bit mask, without allocating. Use
+     * {@link #hasLink(int, Direction)} to check for a specific direction.
+     */
+    public int getNodeLinks(BlockPos pos) {
+        loadRegionOf(pos.asLong());
+        return links.get(pos.asLong());
     }
 
     /**
-     * Check all internal state coherence for debugging purposes.
+     * Check all internal state coherence for debugging purposes, if enabled by
+     * {@link #CHECK_STATE_COHERENCE}.
      */
     public void checkStateCoherence() {
+        if (CHECK_STATE_COHERENCE) {
+            assertStateCoherence();
+        }
+    }
+
+    /**
+     * Check all internal state coherence, even if the checks are disabled.
+     */
+    void assertStateCoherence() {
         customAssert(networkByBlock.keySet().equals(links.keySet()));
-        for (Map.Entry<BlockPos, PipeNetwork> entry : networkByBlock.entrySet()) {
+        for (Long2ObjectMap.Entry<PipeNetwork> entry : networkByBlock.long2ObjectEntrySet()) {
             customAssert(networks.contains(entry.getValue()));
-            PipeNetworkNode node = entry.getValue().nodes.get(entry.getKey());
+            PipeNetworkNode node = entry.getValue().nodes.get(entry.getLongKey());
             customAssert(node == null || node.network == entry.getValue());
         }
-        for (Map.Entry<BlockPos, Set<Direction>> entry : links.entrySet()) {
-            customAssert(entry.getValue() != null);
-        }
         for (PipeNetwork network : networks) {
-            for (Map.Entry<BlockPos, PipeNetworkNode> entry : network.nodes.entrySet()) {
+            for (Long2ObjectMap.Entry<PipeNetworkNode> entry : network.nodes.long2ObjectEntrySet()) {
                 customAssert(entry.getValue() == null || entry.getValue().network == network);
-                customAssert(networkByBlock.get(entry.getKey()) == network);
+                customAssert(networkByBlock.get(entry.getLongKey()) == network);
             }
         }
     }
@@ -40,6 +40,15 @@ public abstract class PipeNetworkNode {
      */
     public abstract PipeEndpointType[] getConnections(BlockPos pos);
 
+    /**
+     * Check if this node might be connected to blocks that are not pipes. Nodes
+     * that return false are skipped when looking for the blocks a network is
+     * connected to.
+     */
+    public boolean hasBlockConnections() {
+        return true;
+    }
+
     public abstract void removeConnection(World world, BlockPos pos, Direction direction);
 
     public abstract void addConnection(World world, BlockPos pos, Direction direction);
@@ -64,18 +73,22 @@ public abstract class PipeNetworkNode {
         return network.manager;
     }
 
+    /**
+     * Wake up the network of this node, should be called when its connections
+     * might have changed.
+     */
+    public final void wakeUpNetwork() {
+        network.wakeUp();
+    }
+
+    /**
+     * Tick this node. This is not called automatically, networks that need per-node
+     * logic should call it from {@link PipeNetwork#tick}.
+     */
     public void tick(World world, BlockPos pos) {
-        network.tick(world);
     }
 
     public CompoundTag writeCustomData() {
         return new CompoundTag();
     }
-
-    /**
-     * Return whether the network node should be synced.
-     */
-    public boolean shouldSync() {
-        return false;
-    }
 }
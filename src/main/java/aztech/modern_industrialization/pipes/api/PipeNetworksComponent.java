@@ -24,9 +24,33 @@
 package aztech.modern_industrialization.pipes.api;
 
 import nerdhub.cardinal.components.api.component.Component;
+import net.minecraft.util.math.BlockPos;
 
 public interface PipeNetworksComponent extends Component {
     PipeNetworkManager getManager(PipeNetworkType type);
 
-    void onServerTickStart();
+    /**
+     * Tick every pipe network of the world. Must be called exactly once per server
+     * tick.
+     */
+    void tickNetworks();
+
+    /**
+     * Update the connections of the pipes that received neighbor updates during
+     * this tick. Must be called exactly once per server tick, at the end of the
+     * tick.
+     */
+    void updateDirtyPipes();
+
+    /**
+     * Wake up the sleeping networks that are connected to a block, for example
+     * because its inventory changed.
+     */
+    void wakeUpNetworks(BlockPos pos);
+
+    /**
+     * Move the pipe networks that were stored on disk back to memory and release
+     * the files. Must be called when the world is unloaded.
+     */
+    void close();
 }
@@ -0,0 +1,270 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes.api;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import net.minecraft.nbt.IntArrayTag;
+
+/**
+ * A memory-mapped file that holds encoded int arrays, keyed by a long. It is
+ * used by {@link PipeNetworkManager} to keep the nodes of regions that have been
+ * unloaded for a long time out of the heap. The file is only a swap space: the
+ * nodes are still written to the world save, and the previous contents of the
+ * file are ignored when it is opened.
+ * <p>
+ * A mapped buffer can't be unmapped before it is garbage collected, and some
+ * platforms don't allow truncating or deleting a file that is still mapped. The
+ * file is never truncated: it is reused as it is the next time the store is
+ * opened, and overwritten from the start.
+ */
+public class PipeTopologyStore implements Closeable {
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private final Supplier<Path> pathSupplier;
+    private FileChannel channel = null;
+    private MappedByteBuffer buffer = null;
+    private IntBuffer ints = null;
+    /**
+     * The offset and the length of every record, in ints, packed in a long.
+     */
+    private final Long2LongOpenHashMap records = new Long2LongOpenHashMap();
+    /**
+     * The first free int at the end of the file.
+     */
+    private int end = 0;
+    /**
+     * Number of ints used by records that were removed.
+     */
+    private int garbage = 0;
+
+    /**
+     * @param pathSupplier The path of the file, only queried when the first record
+     *                     is written.
+     */
+    public PipeTopologyStore(Supplier<Path> pathSupplier) {
+        this.pathSupplier = pathSupplier;
+    }
+
+    public boolean contains(long key) {
+        return records.containsKey(key);
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    public LongSet getKeys() {
+        return records.keySet();
+    }
+
+    /**
+     * Write a record, replacing the previous record with the same key.
+     */
+    public void write(long key, int[] data) throws IOException {
+        if (channel == null) {
+            Path path = pathSupplier.get();
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map(Math.max(INITIAL_SIZE, Math.min(channel.size(), MAX_SIZE)));
+        }
+        remove(key);
+        reserve(data.length);
+        ints.position(end);
+        ints.put(data);
+        records.put(key, (long) end << 32 | data.length);
+        end += data.length;
+    }
+
+    /**
+     * Read a record as it was written, or return null if there is no record with
+     * this key.
+     */
+    public int[] read(long key) {
+        if (!records.containsKey(key)) {
+            return null;
+        }
+        long record = records.get(key);
+        int[] data = new int[(int) record];
+        // Don't move the position of the shared buffer.
+        IntBuffer recordInts = ints.duplicate();
+        recordInts.position((int) (record >>> 32));
+        recordInts.get(data);
+        return data;
+    }
+
+    /**
+     * Get a tag that contains a record. The record is only copied into the heap if
+     * the tag is read, when it is written to a stream it is copied straight from
+     * the file. The tag must be written before the record changes, for example
+     * during the save that created it.
+     */
+    public IntArrayTag getTag(long key) {
+        if (!records.containsKey(key)) {
+            throw new IllegalArgumentException("No pipe topology record with key " + key);
+        }
+        return new RecordTag(this, key);
+    }
+
+    public void remove(long key) {
+        if (records.containsKey(key)) {
+            garbage += (int) records.remove(key);
+        }
+    }
+
+    /**
+     * Make room for a record of the given length at the end of the file, either by
+     * moving the records over the removed ones, or by growing the file.
+     */
+    private void reserve(int length) throws IOException {
+        if ((long) end + length <= ints.capacity()) {
+            return;
+        }
+        if (garbage >= end / 2) {
+            compact();
+            if ((long) end + length <= ints.capacity()) {
+                return;
+            }
+        }
+        long size = buffer.capacity();
+        while (size < ((long) end + length) * 4) {
+            size *= 2;
+        }
+        if (size > MAX_SIZE) {
+            throw new IOException("Pipe topology store is full");
+        }
+        map(size);
+    }
+
+    private void compact() {
+        List<Long2LongMap.Entry> entries = new ArrayList<>(records.long2LongEntrySet());
+        entries.sort(Comparator.comparingLong(Long2LongMap.Entry::getLongValue));
+        int newEnd = 0;
+        for (Long2LongMap.Entry entry : entries) {
+            int offset = (int) (entry.getLongValue() >>> 32);
+            int length = (int) entry.getLongValue();
+            // Records are moved in order, so the destination never overlaps a record that
+            // was not moved yet.
+            for (int i = 0; i < length; ++i) {
+                ints.put(newEnd + i, ints.get(offset + i));
+            }
+            records.put(entry.getLongKey(), (long) newEnd << 32 | length);
+            newEnd += length;
+        }
+        end = newEnd;
+        garbage = 0;
+    }
+
+    /**
+     * An int array tag that reads its value from the store when it is used, so that
+     * saving it doesn't copy the record into the heap. Its own array is always
+     * empty and must not be modified.
+     */
+    private static class RecordTag extends IntArrayTag {
+        private final PipeTopologyStore store;
+        private final long key;
+
+        private RecordTag(PipeTopologyStore store, long key) {
+            super(new int[0]);
+            this.store = store;
+            this.key = key;
+        }
+
+        private long getRecord() {
+            if (!store.records.containsKey(key)) {
+                throw new IllegalStateException("Pipe topology record " + key + " changed before its tag was saved");
+            }
+            return store.records.get(key);
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            long record = getRecord();
+            int offset = (int) (record >>> 32);
+            int length = (int) record;
+            output.writeInt(length);
+            for (int i = 0; i < length; ++i) {
+                output.writeInt(store.ints.get(offset + i));
+            }
+        }
+
+        @Override
+        public int[] getIntArray() {
+            getRecord();
+            return store.read(key);
+        }
+
+        @Override
+        public int size() {
+            return (int) getRecord();
+        }
+
+        @Override
+        public IntArrayTag copy() {
+            return new IntArrayTag(getIntArray());
+        }
+
+        @Override
+        public String toString() {
+            return copy().toString();
+        }
+    }
+
+    private void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        ints = buffer.asIntBuffer();
+    }
+
+    /**
+     * Forget every record and release the file. The mapping itself is released when
+     * the buffer is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        records.clear();
+        end = 0;
+        garbage = 0;
+        buffer = null;
+        ints = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
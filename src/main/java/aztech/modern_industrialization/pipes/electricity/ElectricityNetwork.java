@@ -26,17 +26,36 @@ package aztech.modern_industrialization.pipes.electricity;
 import aztech.modern_industrialization.api.energy.CableTier;
 import aztech.modern_industrialization.api.energy.EnergyExtractable;
 import aztech.modern_industrialization.api.energy.EnergyInsertable;
-import aztech.modern_industrialization.pipes.api.PipeNetwork;
+import aztech.modern_industrialization.pipes.api.AggregatedPipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
-public class ElectricityNetwork extends PipeNetwork {
+/**
+ * An electricity network. Like fluid networks, the energy of the loaded nodes is
+ * stored in a single buffer while the network ticks, and only split back into
+ * the nodes when they are saved, or when the topology changes.
+ */
+public class ElectricityNetwork extends AggregatedPipeNetwork {
     final CableTier tier;
+    /**
+     * The positions and nodes of the loaded nodes with at least one connection, or
+     * null if they need to be rebuilt.
+     */
+    private LongArrayList endpointPositions = null;
+    private final List<ElectricityNetworkNode> endpointNodes = new ArrayList<>();
+    private final List<EnergyInsertable> insertables = new ArrayList<>();
+    private final List<EnergyExtractable> extractables = new ArrayList<>();
+    /**
+     * Reused list of the insertables with some demand.
+     */
+    private final List<EnergyInsertable> consumers = new ArrayList<>();
+    private int firstConsumer = 0;
 
     public ElectricityNetwork(int id, PipeNetworkData data, CableTier tier) {
         super(id, data == null ? new ElectricityNetworkData() : data);
@@ -45,46 +64,98 @@ public class ElectricityNetwork extends PipeNetwork {
 
     @Override
     public void tick(World world) {
-        // Only tick once
-        if (ticked)
-            return;
-        ticked = true;
+        aggregate();
+        updateEndpoints(world);
 
-        List<EnergyInsertable> insertables = new ArrayList<>();
-        List<EnergyExtractable> extractables = new ArrayList<>();
-        long networkAmount = 0;
-        long remainingInsert = 0;
-        int loadedNodes = 0;
-        for (Map.Entry<BlockPos, PipeNetworkNode> entry : nodes.entrySet()) {
-            if (entry.getValue() != null) {
-                ElectricityNetworkNode node = (ElectricityNetworkNode) entry.getValue();
-                node.appendAttributes(world, entry.getKey(), insertables, extractables);
-                networkAmount += node.eu;
-                remainingInsert += tier.getMaxInsert() - node.eu;
-                loadedNodes++;
+        long remainingInsert = Math.max(0, Math.min(getLoadedNodes() * tier.getMaxInsert() - amount, tier.getMaxInsert()));
+        boolean moved = false;
+        for (EnergyExtractable extractable : extractables) {
+            if (remainingInsert == 0) {
+                break;
+            }
+            if (extractable.getSupply() > 0) {
+                long ext = extractable.extractEnergy(remainingInsert);
+                remainingInsert -= ext;
+                amount += ext;
+                moved |= ext > 0;
             }
         }
-        remainingInsert = Math.min(remainingInsert, tier.getMaxInsert());
 
-        for (EnergyExtractable extractable : extractables) {
-            long ext = extractable.extractEnergy(remainingInsert);
-            remainingInsert -= ext;
-            networkAmount += ext;
+        // Only dispatch to the consumers with some demand, and give each of them a fair
+        // share of the remaining energy. The first consumer changes every tick, so that
+        // the rounding doesn't always favor the same consumers.
+        consumers.clear();
+        if (amount > 0) {
+            int size = insertables.size();
+            for (int i = 0; i < size; ++i) {
+                EnergyInsertable insertable = insertables.get((firstConsumer + i) % size);
+                if (insertable.getDemand() > 0) {
+                    consumers.add(insertable);
+                }
+            }
+            firstConsumer = size == 0 ? 0 : (firstConsumer + 1) % size;
         }
+        for (int i = 0; i < consumers.size() && amount > 0; ++i) {
+            int remainingConsumers = consumers.size() - i;
+            long share = (amount + remainingConsumers - 1) / remainingConsumers;
+            long inserted = share - consumers.get(i).insertEnergy(share);
+            moved |= inserted > 0;
+            amount -= inserted;
+        }
+        finishTick(world, moved, false);
+    }
 
-        for (EnergyInsertable insertable : insertables) {
-            if (insertable.canInsert(tier)) {
-                networkAmount = insertable.insertEnergy(networkAmount);
+    /**
+     * Rebuild the endpoints if they were invalidated, and refresh the insertables
+     * and extractables if any {@code BlockApiCache} of the endpoints changed.
+     */
+    private void updateEndpoints(World world) {
+        boolean changed = false;
+        if (endpointPositions == null) {
+            endpointPositions = new LongArrayList();
+            endpointNodes.clear();
+            for (Long2ObjectMap.Entry<PipeNetworkNode> entry : nodes.long2ObjectEntrySet()) {
+                if (entry.getValue() != null && ((ElectricityNetworkNode) entry.getValue()).hasConnections()) {
+                    endpointPositions.add(entry.getLongKey());
+                    endpointNodes.add((ElectricityNetworkNode) entry.getValue());
+                }
             }
+            changed = true;
         }
-
-        for (PipeNetworkNode node : nodes.values()) {
-            if (node != null) {
-                ElectricityNetworkNode electricityNode = (ElectricityNetworkNode) node;
-                electricityNode.eu = networkAmount / loadedNodes;
-                networkAmount -= electricityNode.eu;
-                --loadedNodes;
+        for (int i = 0; i < endpointNodes.size(); ++i) {
+            changed |= endpointNodes.get(i).updateAttributes(world, BlockPos.fromLong(endpointPositions.getLong(i)));
+        }
+        if (changed) {
+            insertables.clear();
+            extractables.clear();
+            for (ElectricityNetworkNode node : endpointNodes) {
+                node.appendAttributes(insertables, extractables);
             }
+            // The tier never changes, so we can filter the insertables right away.
+            insertables.removeIf(insertable -> !insertable.canInsert(tier));
         }
     }
+
+    /**
+     * Must be called when the connections of a node change.
+     */
+    void invalidateEndpoints() {
+        endpointPositions = null;
+    }
+
+    @Override
+    protected long getNodeAmount(PipeNetworkNode node) {
+        return ((ElectricityNetworkNode) node).eu;
+    }
+
+    @Override
+    protected void setNodeAmount(PipeNetworkNode node, long amount) {
+        ((ElectricityNetworkNode) node).eu = amount;
+    }
+
+    @Override
+    protected void onNodesChanged() {
+        super.onNodesChanged();
+        invalidateEndpoints();
+    }
 }
@@ -27,8 +27,10 @@ import static aztech.modern_industrialization.pipes.api.PipeEndpointType.*;
 
 import aztech.modern_industrialization.api.energy.*;
 import aztech.modern_industrialization.pipes.api.PipeEndpointType;
+import aztech.modern_industrialization.pipes.api.PipeNetworkManager;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
 import aztech.modern_industrialization.util.NbtHelper;
+import aztech.modern_industrialization.util.WorldHelper;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -43,18 +45,46 @@ import org.jetbrains.annotations.NotNull;
 public class ElectricityNetworkNode extends PipeNetworkNode {
     private List<Direction> connections = new ArrayList<>();
     private final List<BlockApiCache<EnergyMoveable, @NotNull Direction>> caches = new ArrayList<>();
+    /**
+     * The last attribute returned by every cache.
+     */
+    private final List<EnergyMoveable> moveables = new ArrayList<>();
     long eu = 0;
 
-    public void appendAttributes(World world, BlockPos pos, List<EnergyInsertable> insertables, List<EnergyExtractable> extractables) {
+    /**
+     * Query the api caches of the connections.
+     * 
+     * @return true if a connected attribute changed since the last call.
+     */
+    boolean updateAttributes(World world, BlockPos pos) {
+        boolean changed = false;
         if (caches.size() != connections.size()) {
             caches.clear();
+            moveables.clear();
             for (Direction direction : connections) {
                 caches.add(BlockApiCache.create(EnergyApi.MOVEABLE, (ServerWorld) world, pos.offset(direction)));
+                moveables.add(null);
             }
+            changed = true;
         }
         for (int i = 0; i < connections.size(); ++i) {
-            Direction targetDir = connections.get(i).getOpposite();
-            EnergyMoveable moveable = caches.get(i).get(targetDir);
+            Direction direction = connections.get(i);
+            // Unloaded neighbors are treated as absent.
+            EnergyMoveable moveable = WorldHelper.isNeighborLoaded(world, pos.offset(direction)) ? caches.get(i).get(direction.getOpposite()) : null;
+            if (moveable != moveables.get(i)) {
+                moveables.set(i, moveable);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Add the attributes found by the last {@link #updateAttributes} call to the
+     * lists.
+     */
+    void appendAttributes(List<EnergyInsertable> insertables, List<EnergyExtractable> extractables) {
+        for (EnergyMoveable moveable : moveables) {
             if (moveable instanceof EnergyInsertable)
                 insertables.add((EnergyInsertable) moveable);
             if (moveable instanceof EnergyExtractable)
@@ -62,25 +92,42 @@ public class ElectricityNetworkNode extends PipeNetworkNode {
         }
     }
 
+    boolean hasConnections() {
+        return !connections.isEmpty();
+    }
+
+    private void invalidateEndpoints() {
+        ((ElectricityNetwork) network).invalidateEndpoints();
+    }
+
     @Override
     public void updateConnections(World world, BlockPos pos) {
         // We don't connect by default, so we just have to remove connections that have
-        // become unavailable
+        // become unavailable. We can't check unloaded neighbors, so we keep them.
         for (int i = 0; i < connections.size();) {
-            if (canConnect(world, pos, connections.get(i))) {
+            if (!WorldHelper.isNeighborLoaded(world, pos.offset(connections.get(i))) || canConnect(world, pos, connections.get(i))) {
                 i++;
             } else {
                 connections.remove(i);
                 caches.clear();
+                invalidateEndpoints();
             }
         }
     }
 
+    @Override
+    public boolean hasBlockConnections() {
+        return !connections.isEmpty();
+    }
+
     @Override
     public PipeEndpointType[] getConnections(BlockPos pos) {
         PipeEndpointType[] connections = new PipeEndpointType[6];
-        for (Direction direction : network.manager.getNodeLinks(pos)) {
-            connections[direction.getId()] = PIPE;
+        int links = network.manager.getNodeLinks(pos);
+        for (Direction direction : Direction.values()) {
+            if (PipeNetworkManager.hasLink(links, direction)) {
+                connections[direction.getId()] = PIPE;
+            }
         }
         for (Direction connection : this.connections) {
             connections[connection.getId()] = BLOCK;
@@ -95,6 +142,7 @@ public class ElectricityNetworkNode extends PipeNetworkNode {
             if (connections.get(i) == direction) {
                 connections.remove(i);
                 caches.clear();
+                invalidateEndpoints();
                 return;
             }
         }
@@ -112,11 +160,15 @@ public class ElectricityNetworkNode extends PipeNetworkNode {
         if (canConnect(world, pos, direction)) {
             connections.add(direction);
             caches.clear();
+            invalidateEndpoints();
         }
     }
 
     @Override
     public CompoundTag toTag(CompoundTag tag) {
+        if (network != null) {
+            ((ElectricityNetwork) network).materialize();
+        }
         tag.putByte("connections", NbtHelper.encodeDirections(connections));
         tag.putLong("eu", eu);
         return tag;
@@ -138,7 +190,7 @@ public class ElectricityNetworkNode extends PipeNetworkNode {
 
     // Used in the Waila plugin
     public long getEu() {
-        return eu;
+        return ((ElectricityNetwork) network).getNodeShare(this);
     }
 
     public long getMaxEu() {
@@ -23,51 +23,124 @@
  */
 package aztech.modern_industrialization.pipes.fluid;
 
+import alexiil.mc.lib.attributes.fluid.volume.FluidKey;
 import alexiil.mc.lib.attributes.fluid.volume.FluidKeys;
+import aztech.modern_industrialization.ModernIndustrialization;
+import aztech.modern_industrialization.pipes.api.AggregatedPipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.util.ArrayList;
+import java.util.List;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
-public class FluidNetwork extends PipeNetwork {
+/**
+ * A fluid network. While the network is ticking, the fluid of all its loaded
+ * nodes is stored in a single aggregate amount, and it is only split back into
+ * the nodes when they are saved, or when the topology changes.
+ */
+public class FluidNetwork extends AggregatedPipeNetwork {
     final int nodeCapacity;
+    /**
+     * The maximum amount that every connection can insert or extract per tick.
+     */
+    final int transferRate;
+    /**
+     * The total capacity of the loaded nodes, only valid if aggregated.
+     */
+    int capacity;
+    /**
+     * The positions and nodes of the loaded nodes with at least one connection, or
+     * null if they need to be rebuilt.
+     */
+    private LongArrayList endpointPositions = null;
+    private final List<FluidNetworkNode> endpointNodes = new ArrayList<>();
+    /**
+     * The fluid when the nodes were last marked dirty.
+     */
+    private FluidKey dirtyFluid = FluidKeys.EMPTY;
 
-    public FluidNetwork(int id, PipeNetworkData data, int nodeCapacity) {
+    public FluidNetwork(int id, PipeNetworkData data, int nodeCapacity, int transferRate) {
         super(id, data == null ? new FluidNetworkData(FluidKeys.EMPTY) : data);
         this.nodeCapacity = nodeCapacity;
+        this.transferRate = transferRate;
     }
 
     @Override
     public void tick(World world) {
-        // Only tick once
-        if (ticked)
-            return;
-        ticked = true;
+        aggregate();
+        if (endpointPositions == null) {
+            rebuildEndpoints();
+        }
+        // Interact with other inventories. Stop if a topology change during the
+        // interactions wrote the aggregate amount back into the nodes.
+        boolean moved = false;
+        LongArrayList positions = endpointPositions;
+        for (int i = 0; isAggregated() && i < positions.size(); ++i) {
+            moved |= endpointNodes.get(i).interactWithConnections(world, BlockPos.fromLong(positions.getLong(i)));
+        }
+        // The clients must see a new fluid right away.
+        FluidKey fluid = ((FluidNetworkData) data).fluid;
+        boolean fluidChanged = fluid != dirtyFluid;
+        dirtyFluid = fluid;
+        finishTick(world, moved, fluidChanged);
+    }
 
-        int totalAmount = 0;
-        int remainingNodes = 0;
-        // Interact with other inventories
-        for (Map.Entry<BlockPos, PipeNetworkNode> entry : nodes.entrySet()) {
-            if (entry.getValue() != null) {
-                FluidNetworkNode fluidNode = (FluidNetworkNode) entry.getValue();
-                fluidNode.interactWithConnections(world, entry.getKey());
-                totalAmount += fluidNode.amount;
-                remainingNodes++;
-            }
+    @Override
+    protected long getNodeAmount(PipeNetworkNode node) {
+        return ((FluidNetworkNode) node).amount;
+    }
+
+    @Override
+    protected void setNodeAmount(PipeNetworkNode node, long amount) {
+        ((FluidNetworkNode) node).amount = (int) amount;
+    }
+
+    @Override
+    protected void onAggregated() {
+        capacity = getLoadedNodes() * nodeCapacity;
+        if (amount > capacity) {
+            ModernIndustrialization.LOGGER.warn("Fluid amount > capacity, deleting some fluid!");
+            amount = capacity;
         }
-        // Rebalance fluid inside the nodes
-        for (PipeNetworkNode node : nodes.values()) {
-            if (node != null) {
-                FluidNetworkNode fluidNode = (FluidNetworkNode) node;
-                fluidNode.amount = totalAmount / remainingNodes;
-                totalAmount -= fluidNode.amount;
-                remainingNodes--;
+        if (amount > 0 && ((FluidNetworkData) data).fluid.isEmpty()) {
+            ModernIndustrialization.LOGGER.warn("Amount > 0 but fluid is empty, deleting some fluid!");
+            amount = 0;
+        }
+    }
+
+    @Override
+    protected boolean onNodeMarkedDirty(PipeNetworkNode node) {
+        return ((FluidNetworkNode) node).updateCachedFluid();
+    }
+
+    private void rebuildEndpoints() {
+        endpointPositions = new LongArrayList();
+        endpointNodes.clear();
+        for (Long2ObjectMap.Entry<PipeNetworkNode> entry : nodes.long2ObjectEntrySet()) {
+            if (entry.getValue() != null && ((FluidNetworkNode) entry.getValue()).hasConnections()) {
+                endpointPositions.add(entry.getLongKey());
+                endpointNodes.add((FluidNetworkNode) entry.getValue());
             }
         }
     }
 
+    /**
+     * Must be called when the connections of a node change.
+     */
+    void invalidateEndpoints() {
+        endpointPositions = null;
+    }
+
+    @Override
+    protected void onNodesChanged() {
+        super.onNodesChanged();
+        invalidateEndpoints();
+    }
+
     @Override
     public PipeNetworkData merge(PipeNetwork other) {
         FluidNetworkData thisData = (FluidNetworkData) data;
@@ -84,10 +157,10 @@ public class FluidNetwork extends PipeNetwork {
         if (((FluidNetworkData) data).fluid.isEmpty())
             return true;
         for (PipeNetworkNode node : nodes.values()) {
-            if (node == null || ((FluidNetworkNode) node).amount != 0) {
+            if (node == null || !isAggregated() && ((FluidNetworkNode) node).amount != 0) {
                 return false;
             }
         }
-        return true;
+        return !isAggregated() || amount == 0;
     }
 }
@@ -26,17 +26,17 @@ package aztech.modern_industrialization.pipes.fluid;
 import static alexiil.mc.lib.attributes.Simulation.ACTION;
 import static aztech.modern_industrialization.pipes.api.PipeEndpointType.*;
 
-import alexiil.mc.lib.attributes.SearchOption;
-import alexiil.mc.lib.attributes.SearchOptions;
 import alexiil.mc.lib.attributes.fluid.FluidAttributes;
 import alexiil.mc.lib.attributes.fluid.FluidExtractable;
 import alexiil.mc.lib.attributes.fluid.FluidInsertable;
 import alexiil.mc.lib.attributes.fluid.amount.FluidAmount;
 import alexiil.mc.lib.attributes.fluid.filter.ExactFluidFilter;
 import alexiil.mc.lib.attributes.fluid.volume.*;
-import aztech.modern_industrialization.ModernIndustrialization;
 import aztech.modern_industrialization.pipes.api.PipeEndpointType;
+import aztech.modern_industrialization.pipes.api.PipeNetworkManager;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
+import aztech.modern_industrialization.util.NeighborAttributeCache;
+import aztech.modern_industrialization.util.WorldHelper;
 import java.math.RoundingMode;
 import java.util.*;
 import net.minecraft.nbt.CompoundTag;
@@ -47,71 +47,90 @@ import net.minecraft.world.World;
 public class FluidNetworkNode extends PipeNetworkNode {
     int amount = 0;
     private List<FluidConnection> connections = new ArrayList<>();
+    private final NeighborAttributeCache<FluidInsertable> insertables = new NeighborAttributeCache<>(FluidAttributes.INSERTABLE);
+    private final NeighborAttributeCache<FluidExtractable> extractables = new NeighborAttributeCache<>(FluidAttributes.EXTRACTABLE);
     private FluidKey cachedFluid = FluidKeys.EMPTY;
-    private boolean needsSync = false;
 
-    void interactWithConnections(World world, BlockPos pos) {
+    /**
+     * Insert into and extract from the connected blocks. The fluid is taken from
+     * and added to the aggregate amount of the network.
+     * 
+     * @return true if some fluid was moved.
+     */
+    boolean interactWithConnections(World world, BlockPos pos) {
         FluidNetworkData data = (FluidNetworkData) network.data;
         FluidNetwork network = (FluidNetwork) this.network;
-        if (amount > network.nodeCapacity) {
-            ModernIndustrialization.LOGGER.warn("Fluid amount > nodeCapacity, deleting some fluid!");
-            amount = network.nodeCapacity;
-        }
-        if (amount > 0 && data.fluid.isEmpty()) {
-            ModernIndustrialization.LOGGER.warn("Amount > 0 but fluid is empty, deleting some fluid!");
-            amount = 0;
-        }
-        for (FluidConnection connection : connections) { // TODO: limit insert and extract rate
+        boolean moved = false;
+        long time = world.getTime();
+        for (FluidConnection connection : connections) {
             // Insert
-            if (amount > 0 && connection.canInsert()) {
-                SearchOption option = SearchOptions.inDirection(connection.direction);
-                FluidInsertable insertable = FluidAttributes.INSERTABLE.get(world, pos.offset(connection.direction), option);
-                FluidVolume leftover = insertable.attemptInsertion(data.fluid.withAmount(FluidAmount.of(amount, 1000)), ACTION);
-                amount = leftover.amount().asInt(1000, RoundingMode.FLOOR);
+            if (network.amount > 0 && connection.canInsert() && connection.insertBackoff.isReady(time)) {
+                FluidInsertable insertable = insertables.get(world, pos, connection.direction);
+                long maxInserted = Math.min(network.amount, network.transferRate);
+                FluidVolume leftover = insertable.attemptInsertion(data.fluid.withAmount(FluidAmount.of(maxInserted, 1000)), ACTION);
+                long insertedAmount = maxInserted - leftover.amount().asInt(1000, RoundingMode.FLOOR);
+                connection.insertBackoff.update(insertedAmount > 0, time);
+                moved |= insertedAmount > 0;
+                network.amount -= insertedAmount;
             }
-            if (connection.canExtract()) {
+            if (network.amount < network.capacity && connection.canExtract() && connection.extractBackoff.isReady(time)) {
+                long maxExtracted = Math.min(network.capacity - network.amount, network.transferRate);
+                FluidExtractable extractable = extractables.get(world, pos, connection.direction);
                 // Extract any
                 if (data.fluid.isEmpty()) {
-                    SearchOption option = SearchOptions.inDirection(connection.direction);
-                    FluidExtractable extractable = FluidAttributes.EXTRACTABLE.get(world, pos.offset(connection.direction), option);
-                    FluidVolume extractedVolume = extractable.extract(FluidAmount.of(network.nodeCapacity, 1000));
-                    if (extractedVolume.amount().isPositive()) {
-                        amount = extractedVolume.amount().asInt(1000, RoundingMode.FLOOR);
+                    FluidVolume extractedVolume = extractable.extract(FluidAmount.of(maxExtracted, 1000));
+                    boolean extracted = extractedVolume.amount().isPositive();
+                    connection.extractBackoff.update(extracted, time);
+                    if (extracted) {
+                        network.amount = extractedVolume.amount().asInt(1000, RoundingMode.FLOOR);
                         data.fluid = extractedVolume.getFluidKey();
+                        moved = true;
                         break;
                     }
                 }
                 // Extract current fluid
                 else {
-                    SearchOption option = SearchOptions.inDirection(connection.direction);
-                    FluidExtractable extractable = FluidAttributes.EXTRACTABLE.get(world, pos.offset(connection.direction), option);
-                    FluidVolume extractedVolume = extractable.extract(new ExactFluidFilter(data.fluid),
-                            FluidAmount.of(network.nodeCapacity - amount, 1000));
-                    amount += extractedVolume.amount().asInt(1000, RoundingMode.FLOOR);
+                    FluidVolume extractedVolume = extractable.extract(new ExactFluidFilter(data.fluid), FluidAmount.of(maxExtracted, 1000));
+                    int extractedAmount = extractedVolume.amount().asInt(1000, RoundingMode.FLOOR);
+                    connection.extractBackoff.update(extractedAmount > 0, time);
+                    moved |= extractedAmount > 0;
+                    network.amount += extractedAmount;
                 }
             }
         }
+        return moved;
     }
 
     @Override
     public void updateConnections(World world, BlockPos pos) {
+        insertables.invalidate();
+        extractables.invalidate();
         // We don't connect by default, so we just have to remove connections that have
-        // become unavailable
+        // become unavailable. We can't check unloaded neighbors, so we keep them.
         for (int i = 0; i < connections.size();) {
             FluidConnection conn = connections.get(i);
-            if (canConnect(world, pos, conn.direction)) {
+            if (!WorldHelper.isNeighborLoaded(world, pos.offset(conn.direction)) || canConnect(world, pos, conn.direction)) {
                 i++;
             } else {
                 connections.remove(i);
+                invalidateEndpoints();
             }
         }
     }
 
+    @Override
+    public boolean hasBlockConnections() {
+        return !connections.isEmpty();
+    }
+
     @Override
     public PipeEndpointType[] getConnections(BlockPos pos) {
         PipeEndpointType[] connections = new PipeEndpointType[6];
-        for (Direction direction : network.manager.getNodeLinks(pos)) {
-            connections[direction.getId()] = PipeEndpointType.PIPE;
+        int links = network.manager.getNodeLinks(pos);
+        for (Direction direction : Direction.values()) {
+            if (PipeNetworkManager.hasLink(links, direction)) {
+                connections[direction.getId()] = PipeEndpointType.PIPE;
+            }
         }
         for (FluidConnection connection : this.connections) {
             connections[connection.direction.getId()] = connection.type;
@@ -120,9 +139,7 @@ public class FluidNetworkNode extends PipeNetworkNode {
     }
 
     private boolean canConnect(World world, BlockPos pos, Direction direction) {
-        SearchOption option = SearchOptions.inDirection(direction);
-        return FluidAttributes.INSERTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny()
-                || FluidAttributes.EXTRACTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny();
+        return insertables.hasOfferedAny(world, pos, direction) || extractables.hasOfferedAny(world, pos, direction);
     }
 
     @Override
@@ -135,8 +152,10 @@ public class FluidNetworkNode extends PipeNetworkNode {
                     conn.type = BLOCK_IN_OUT;
                 else if (conn.type == BLOCK_IN_OUT)
                     conn.type = BLOCK_OUT;
-                else
+                else {
                     connections.remove(i);
+                    invalidateEndpoints();
+                }
                 return;
             }
         }
@@ -153,11 +172,23 @@ public class FluidNetworkNode extends PipeNetworkNode {
         // Otherwise try to connect
         if (canConnect(world, pos, direction)) {
             connections.add(new FluidConnection(direction, BLOCK_IN));
+            invalidateEndpoints();
         }
     }
 
+    boolean hasConnections() {
+        return !connections.isEmpty();
+    }
+
+    private void invalidateEndpoints() {
+        ((FluidNetwork) network).invalidateEndpoints();
+    }
+
     @Override
     public CompoundTag toTag(CompoundTag tag) {
+        if (network != null) {
+            ((FluidNetwork) network).materialize();
+        }
         tag.putInt("amount", amount);
         for (FluidConnection connection : connections) {
             tag.putByte(connection.direction.toString(), (byte) encodeConnectionType(connection.type));
@@ -186,6 +217,8 @@ public class FluidNetworkNode extends PipeNetworkNode {
     private static class FluidConnection {
         private final Direction direction;
         private PipeEndpointType type;
+        private final Backoff insertBackoff = new Backoff();
+        private final Backoff extractBackoff = new Backoff();
 
         private FluidConnection(Direction direction, PipeEndpointType type) {
             this.direction = direction;
@@ -201,6 +234,35 @@ public class FluidNetworkNode extends PipeNetworkNode {
         }
     }
 
+    /**
+     * Skips the insertions or extractions of a connection for a few ticks after
+     * they failed, so that saturated targets and starved sources are not queried
+     * every tick. The delay is measured in world time, so it also runs out during
+     * the ticks where the operation is not attempted at all.
+     */
+    private static class Backoff {
+        private static final int MAX_DELAY = 8;
+
+        private int delay = 0;
+        private long nextAttempt = 0;
+
+        /**
+         * @return true if the operation should be attempted at this world time.
+         */
+        private boolean isReady(long time) {
+            return time >= nextAttempt;
+        }
+
+        private void update(boolean success, long time) {
+            if (success) {
+                delay = 0;
+            } else {
+                delay = Math.min(MAX_DELAY, Math.max(1, 2 * delay));
+                nextAttempt = time + delay + 1;
+            }
+        }
+    }
+
     @Override
     public CompoundTag writeCustomData() {
         CompoundTag tag = new CompoundTag();
@@ -208,27 +270,23 @@ public class FluidNetworkNode extends PipeNetworkNode {
         return tag;
     }
 
-    @Override
-    public void tick(World world, BlockPos pos) {
-        super.tick(world, pos);
-
+    /**
+     * Update the fluid that was last synced to the client.
+     * 
+     * @return true if the fluid changed and the node should be synced.
+     */
+    boolean updateCachedFluid() {
         FluidKey networkFluid = ((FluidNetworkData) network.data).fluid;
         if (networkFluid != cachedFluid) {
             cachedFluid = networkFluid;
-            needsSync = true;
+            return true;
         }
-    }
-
-    @Override
-    public boolean shouldSync() {
-        boolean sync = needsSync;
-        needsSync = false;
-        return sync;
+        return false;
     }
 
     // Used in the Waila plugin
     public int getAmount() {
-        return amount;
+        return (int) ((FluidNetwork) network).getNodeShare(this);
     }
 
     public int getCapacity() {
@@ -239,7 +239,10 @@ public class PipeBlock extends Block implements BlockEntityProvider, IWrenchable
     @Override
     public void neighborUpdate(BlockState state, World world, BlockPos pos, Block block, BlockPos fromPos, boolean notify) {
         if (!world.isClient) {
-            ((PipeBlockEntity) world.getBlockEntity(pos)).updateConnections();
+            // Neighbor updates often come in cascades, so we coalesce them until the end of
+            // the tick.
+            PipeBlockEntity pipe = (PipeBlockEntity) world.getBlockEntity(pos);
+            ((PipeNetworksComponentImpl) MIPipes.PIPE_NETWORKS.get(world)).scheduleConnectionsUpdate(pipe);
         }
         super.neighborUpdate(state, world, pos, block, fromPos, notify);
     }
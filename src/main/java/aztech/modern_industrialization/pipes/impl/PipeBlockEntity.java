@@ -40,17 +40,18 @@ import net.minecraft.client.world.ClientWorld;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.Pair;
-import net.minecraft.util.Tickable;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.util.shape.VoxelShape;
 import net.minecraft.util.shape.VoxelShapes;
+import net.minecraft.world.World;
 
 /**
  * The BlockEntity for a pipe.
  */
 // TODO: add isClient checks wherever it is necessary
 public class PipeBlockEntity extends FastBlockEntity
-        implements Tickable, BlockEntityClientSerializable, RenderAttachmentBlockEntity, ChunkUnloadBlockEntity {
+        implements BlockEntityClientSerializable, RenderAttachmentBlockEntity, ChunkUnloadBlockEntity {
     private static final int MAX_PIPES = 3;
     private static final VoxelShape[][][] SHAPE_CACHE;
     static final VoxelShape DEFAULT_SHAPE;
@@ -73,10 +74,10 @@ public class PipeBlockEntity extends FastBlockEntity
     SortedMap<PipeNetworkType, CompoundTag> customData = new TreeMap<>();
 
     // Because we can't access the PipeNetworksComponent in fromTag because the
-    // world is null, we defer the node loading.
+    // world is null, we defer the node loading to the next network tick.
     private List<Pair<PipeNetworkType, PipeNetworkNode>> unloadedPipes = new ArrayList<>();
 
-    private void loadPipes() {
+    void loadPipes() {
         boolean changed = false;
         for (Pair<PipeNetworkType, PipeNetworkNode> unloaded : unloadedPipes) {
             MIPipes.PIPE_NETWORKS.get(world).getManager(unloaded.getLeft()).nodeLoaded(unloaded.getRight(), pos);
@@ -98,6 +99,7 @@ public class PipeBlockEntity extends FastBlockEntity
         loadPipes();
         for (PipeNetworkNode pipe : pipes) {
             pipe.updateConnections(world, pos);
+            pipe.wakeUpNetwork();
         }
         onConnectionsChanged();
     }
@@ -178,6 +180,7 @@ public class PipeBlockEntity extends FastBlockEntity
             if (pipe.getType() == type) {
                 pipe.removeConnection(world, pos, direction);
                 pipe.getManager().removeLink(pos, direction);
+                pipe.wakeUpNetwork();
                 onConnectionsChanged();
                 return;
             }
@@ -192,6 +195,7 @@ public class PipeBlockEntity extends FastBlockEntity
             if (pipe.getType() == type) {
                 pipe.addConnection(world, pos, direction);
                 pipe.getManager().addLink(pos, direction, true);
+                pipe.wakeUpNetwork();
                 onConnectionsChanged();
                 return;
             }
@@ -249,15 +253,11 @@ public class PipeBlockEntity extends FastBlockEntity
     }
 
     @Override
-    public void tick() {
-        loadPipes();
-        for (PipeNetworkNode pipe : pipes) {
-            pipe.tick(world, pos);
-            if (pipe.shouldSync()) {
-                sync();
-            }
+    public void setLocation(World world, BlockPos pos) {
+        super.setLocation(world, pos);
+        if (!world.isClient && !unloadedPipes.isEmpty()) {
+            ((PipeNetworksComponentImpl) MIPipes.PIPE_NETWORKS.get(world)).scheduleLoad(this);
         }
-        markDirty();
     }
 
     @Override
@@ -23,40 +23,202 @@
  */
 package aztech.modern_industrialization.pipes.impl;
 
-import aztech.modern_industrialization.pipes.api.PipeNetworkManager;
-import aztech.modern_industrialization.pipes.api.PipeNetworkType;
-import aztech.modern_industrialization.pipes.api.PipeNetworksComponent;
-import java.util.HashMap;
-import java.util.Map;
+import aztech.modern_industrialization.MIConfig;
+import aztech.modern_industrialization.ModernIndustrialization;
+import aztech.modern_industrialization.pipes.api.*;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
 import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
 
 public class PipeNetworksComponentImpl implements PipeNetworksComponent {
+    private final World world;
     private Map<PipeNetworkType, PipeNetworkManager> managers = new HashMap<>();
+    /**
+     * Pipe block entities that were loaded since the last tick, and whose nodes
+     * still need to be linked to their networks.
+     */
+    private final List<PipeBlockEntity> pendingLoads = new ArrayList<>();
+    /**
+     * Pipe block entities that received neighbor updates since the end of the last
+     * tick. A set, so that every pipe is updated at most once per tick.
+     */
+    private ReferenceLinkedOpenHashSet<PipeBlockEntity> dirtyPipes = new ReferenceLinkedOpenHashSet<>();
+    /**
+     * Sleeping networks, keyed by the position of the blocks they are connected to.
+     */
+    private final Long2ObjectOpenHashMap<Set<PipeNetwork>> sleepingNetworks = new Long2ObjectOpenHashMap<>();
+    /**
+     * The positions of the connected blocks of every sleeping network, to remove
+     * it from {@link #sleepingNetworks} when it wakes up.
+     */
+    private final Map<PipeNetwork, LongArrayList> sleepingPositions = new Reference2ObjectOpenHashMap<>();
 
     public PipeNetworksComponentImpl(World world) {
+        this.world = world;
         for (PipeNetworkType type : PipeNetworkType.getTypes().values()) {
-            managers.put(type, new PipeNetworkManager(type));
+            managers.put(type, createManager(type));
         }
     }
 
+    private PipeNetworkManager createManager(PipeNetworkType type) {
+        PipeNetworkManager manager = new PipeNetworkManager(type);
+        manager.setWakeUpListener(this::onNetworkWakeUp);
+        if (world instanceof ServerWorld && MIConfig.getConfig().storeUnloadedPipeNetworks) {
+            // The server is not available yet while the world is being constructed.
+            manager.setTopologyStore(new PipeTopologyStore(() -> getDataDirectory().resolve(type.getIdentifier().getPath() + ".bin")));
+        }
+        return manager;
+    }
+
+    private Path getDataDirectory() {
+        ServerWorld serverWorld = (ServerWorld) world;
+        File rootDirectory = serverWorld.getServer().getSavePath(WorldSavePath.ROOT).toFile();
+        File worldDirectory = DimensionType.getSaveDirectory(serverWorld.getRegistryKey(), rootDirectory);
+        return worldDirectory.toPath().resolve("data").resolve("modern_industrialization_pipes");
+    }
+
     @Override
     public PipeNetworkManager getManager(PipeNetworkType type) {
         return managers.get(type);
     }
 
+    /**
+     * Load the nodes of a pipe block entity before the next network tick. We can't
+     * do it while the chunk is being loaded.
+     */
+    void scheduleLoad(PipeBlockEntity pipe) {
+        pendingLoads.add(pipe);
+    }
+
+    /**
+     * Update the connections of a pipe block entity at the end of the tick.
+     */
+    void scheduleConnectionsUpdate(PipeBlockEntity pipe) {
+        dirtyPipes.add(pipe);
+    }
+
     @Override
-    public void onServerTickStart() {
+    public void tickNetworks() {
+        for (PipeBlockEntity pipe : pendingLoads) {
+            if (!pipe.isRemoved()) {
+                pipe.loadPipes();
+            }
+        }
+        pendingLoads.clear();
+
         for (PipeNetworkManager manager : managers.values()) {
-            manager.markNetworksAsUnticked();
+            manager.tickNetworks(world, this::onNetworkSleep);
+        }
+    }
+
+    @Override
+    public void updateDirtyPipes() {
+        if (dirtyPipes.isEmpty()) {
+            return;
+        }
+        // Pipes that are marked dirty again by these updates will be processed next
+        // tick.
+        ReferenceLinkedOpenHashSet<PipeBlockEntity> pipes = dirtyPipes;
+        dirtyPipes = new ReferenceLinkedOpenHashSet<>();
+        for (PipeBlockEntity pipe : pipes) {
+            if (!pipe.isRemoved()) {
+                pipe.updateConnections();
+            }
+        }
+    }
+
+    private void onNetworkSleep(PipeNetwork network) {
+        LongArrayList positions = new LongArrayList();
+        for (Long2ObjectMap.Entry<PipeNetworkNode> entry : network.nodes.long2ObjectEntrySet()) {
+            PipeNetworkNode node = entry.getValue();
+            if (node != null && node.hasBlockConnections()) {
+                PipeEndpointType[] connections = node.getConnections(BlockPos.fromLong(entry.getLongKey()));
+                for (Direction direction : Direction.values()) {
+                    PipeEndpointType connection = connections[direction.getId()];
+                    if (connection != null && connection != PipeEndpointType.PIPE) {
+                        long connectedPos = BlockPos.offset(entry.getLongKey(), direction);
+                        Set<PipeNetwork> networks = sleepingNetworks.get(connectedPos);
+                        if (networks == null) {
+                            networks = new ReferenceOpenHashSet<>();
+                            sleepingNetworks.put(connectedPos, networks);
+                        }
+                        networks.add(network);
+                        positions.add(connectedPos);
+                    }
+                }
+            }
+        }
+        if (!positions.isEmpty()) {
+            sleepingPositions.put(network, positions);
+        }
+    }
+
+    /**
+     * Forget the connected blocks of a network that was woken up or removed.
+     */
+    private void onNetworkWakeUp(PipeNetwork network) {
+        LongArrayList positions = sleepingPositions.remove(network);
+        if (positions == null) {
+            return;
+        }
+        for (int i = 0; i < positions.size(); ++i) {
+            long pos = positions.getLong(i);
+            Set<PipeNetwork> networks = sleepingNetworks.get(pos);
+            if (networks != null && networks.remove(network) && networks.isEmpty()) {
+                sleepingNetworks.remove(pos);
+            }
+        }
+    }
+
+    @Override
+    public void wakeUpNetworks(BlockPos pos) {
+        Set<PipeNetwork> networks = sleepingNetworks.get(pos.asLong());
+        if (networks != null) {
+            // Waking up a network removes it from the set.
+            for (PipeNetwork network : networks.toArray(new PipeNetwork[0])) {
+                network.wakeUp();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeTopologyStores();
+    }
+
+    private void closeTopologyStores() {
+        for (PipeNetworkManager manager : managers.values()) {
+            try {
+                manager.closeTopologyStore();
+            } catch (IOException e) {
+                ModernIndustrialization.LOGGER.error("Could not close pipe topology store", e);
+            }
         }
     }
 
     @Override
     public void fromTag(CompoundTag tag) {
+        // The new managers reuse the files of the old stores.
+        closeTopologyStores();
+        sleepingNetworks.clear();
+        sleepingPositions.clear();
         for (Map.Entry<Identifier, PipeNetworkType> entry : PipeNetworkType.getTypes().entrySet()) {
-            PipeNetworkManager manager = new PipeNetworkManager(entry.getValue());
+            PipeNetworkManager manager = createManager(entry.getValue());
             String tagKey = entry.getKey().toString();
             if (tag.contains(tagKey)) {
                 manager.fromTag(tag.getCompound(tagKey));
@@ -25,9 +25,151 @@ package aztech.modern_industrialization.pipes.item;
 
 import aztech.modern_industrialization.pipes.api.PipeNetwork;
 import aztech.modern_industrialization.pipes.api.PipeNetworkData;
+import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
 
 public class ItemNetwork extends PipeNetwork {
-    public ItemNetwork(int id, PipeNetworkData data) {
+    private static final int STACK_SIZE = 64;
+    /**
+     * Credit needed by an extract connection to move a full stack. Every extract
+     * connection gains itemsPerSecond credit per tick, so one credit is 1/20 of an
+     * item.
+     */
+    private static final int STACK_CREDIT = STACK_SIZE * 20;
+
+    private final int itemsPerSecond;
+    /**
+     * The extract sources of all the loaded nodes, valid when insertTargets is not
+     * null. Replaced rather than cleared on rebuild, because the routes can be
+     * invalidated while it is being iterated.
+     */
+    private List<ItemNetworkNode.ExtractSource> extractSources = new ArrayList<>();
+    /**
+     * The insert targets of all the loaded nodes, sorted by decreasing priority, or
+     * null if they need to be rebuilt.
+     */
+    private List<ItemNetworkNode.InsertTarget> insertTargets = null;
+    /**
+     * The start index of every priority band in insertTargets, followed by the
+     * size of insertTargets.
+     */
+    private final IntArrayList bandStarts = new IntArrayList();
+    /**
+     * The round-robin cursor of every priority band, relative to the band start.
+     */
+    private final IntArrayList bandCursors = new IntArrayList();
+    /**
+     * Reused list for {@link #getInsertTargets}.
+     */
+    private final List<ItemNetworkNode.InsertTarget> orderedTargets = new ArrayList<>();
+
+    public ItemNetwork(int id, PipeNetworkData data, int itemsPerSecond) {
         super(id, data == null ? new ItemNetworkData() : data);
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    @Override
+    public void tick(World world) {
+        if (insertTargets == null) {
+            rebuildRoutes();
+        }
+        // A sleeping network is only ticked for its heartbeat, so every extract
+        // connection should try to move items right away.
+        boolean heartbeat = isSleeping();
+        for (ItemNetworkNode.ExtractSource source : extractSources) {
+            int credit = heartbeat ? STACK_CREDIT : Math.min(STACK_CREDIT, source.getCredit() + itemsPerSecond);
+            if (credit == STACK_CREDIT) {
+                int moved = source.moveStack(world, getInsertTargets(), STACK_SIZE);
+                if (moved > 0) {
+                    credit -= moved * 20;
+                    wakeUp();
+                } else {
+                    // Nothing to move, wait for a full stack of credit before trying again.
+                    credit = 0;
+                }
+            }
+            source.setCredit(credit);
+        }
+    }
+
+    @Override
+    protected int getTicksBeforeSleep() {
+        // Wait for two extraction attempts of every connection.
+        return 2 * (STACK_CREDIT / Math.max(1, itemsPerSecond)) + 1;
+    }
+
+    @Override
+    protected void onNodesChanged() {
+        super.onNodesChanged();
+        invalidateRoutes();
+    }
+
+    /**
+     * Must be called when the connections of a node or their priority change.
+     */
+    void invalidateRoutes() {
+        insertTargets = null;
+    }
+
+    /**
+     * Get the insert targets of the network, by decreasing priority. Targets with
+     * the same priority are rotated every time this function is called. The
+     * returned list is reused by the next call.
+     */
+    private List<ItemNetworkNode.InsertTarget> getInsertTargets() {
+        if (insertTargets == null) {
+            rebuildRoutes();
+        }
+
+        orderedTargets.clear();
+        for (int band = 0; band < bandCursors.size(); ++band) {
+            int start = bandStarts.getInt(band);
+            int size = bandStarts.getInt(band + 1) - start;
+            int cursor = bandCursors.getInt(band);
+            for (int i = 0; i < size; ++i) {
+                orderedTargets.add(insertTargets.get(start + (cursor + i) % size));
+            }
+            bandCursors.set(band, (cursor + 1) % size);
+        }
+        return orderedTargets;
+    }
+
+    private void rebuildRoutes() {
+        insertTargets = new ArrayList<>();
+        extractSources = new ArrayList<>();
+        for (Long2ObjectMap.Entry<PipeNetworkNode> entry : nodes.long2ObjectEntrySet()) {
+            if (entry.getValue() != null) {
+                ItemNetworkNode node = (ItemNetworkNode) entry.getValue();
+                BlockPos pos = BlockPos.fromLong(entry.getLongKey());
+                node.appendInsertTargets(pos, insertTargets);
+                node.appendExtractSources(pos, extractSources);
+            }
+        }
+        // Spread the first extraction of new connections evenly over the next stack
+        // period, so that they don't all move items during the same tick.
+        for (int i = 0; i < extractSources.size(); ++i) {
+            ItemNetworkNode.ExtractSource source = extractSources.get(i);
+            if (source.getCredit() < 0) {
+                source.setCredit((int) ((long) i * STACK_CREDIT / extractSources.size()));
+            }
+        }
+        // Sort by priority, high to low
+        insertTargets.sort(Comparator.comparingInt(target -> -target.getPriority()));
+
+        bandStarts.clear();
+        bandCursors.clear();
+        for (int i = 0; i < insertTargets.size(); ++i) {
+            if (i == 0 || insertTargets.get(i).getPriority() != insertTargets.get(i - 1).getPriority()) {
+                bandStarts.add(i);
+                bandCursors.add(0);
+            }
+        }
+        bandStarts.add(insertTargets.size());
     }
 }
@@ -25,16 +25,20 @@ package aztech.modern_industrialization.pipes.item;
 
 import static aztech.modern_industrialization.pipes.api.PipeEndpointType.*;
 
-import alexiil.mc.lib.attributes.SearchOption;
-import alexiil.mc.lib.attributes.SearchOptions;
 import alexiil.mc.lib.attributes.item.*;
 import aztech.modern_industrialization.pipes.api.PipeEndpointType;
+import aztech.modern_industrialization.pipes.api.PipeNetworkManager;
 import aztech.modern_industrialization.pipes.api.PipeNetworkNode;
 import aztech.modern_industrialization.util.ItemStackHelper;
+import aztech.modern_industrialization.util.NeighborAttributeCache;
+import aztech.modern_industrialization.util.WorldHelper;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import java.util.*;
 import net.fabricmc.fabric.api.screenhandler.v1.ExtendedScreenHandlerFactory;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.PacketByteBuf;
@@ -49,33 +53,43 @@ import net.minecraft.world.World;
 // TODO: item filters
 public class ItemNetworkNode extends PipeNetworkNode {
     private List<ItemConnection> connections = new ArrayList<>();
-    private int inactiveTicks = 0;
+    private final NeighborAttributeCache<ItemInsertable> insertables = new NeighborAttributeCache<>(ItemAttributes.INSERTABLE);
+    private final NeighborAttributeCache<ItemExtractable> extractables = new NeighborAttributeCache<>(ItemAttributes.EXTRACTABLE);
 
     @Override
     public void updateConnections(World world, BlockPos pos) {
+        insertables.invalidate();
+        extractables.invalidate();
         // We don't connect by default, so we just have to remove connections that have
-        // become unavailable
+        // become unavailable. We can't check unloaded neighbors, so we keep them.
         for (int i = 0; i < connections.size();) {
             ItemConnection conn = connections.get(i);
-            if (canConnect(world, pos, conn.direction)) {
+            if (!WorldHelper.isNeighborLoaded(world, pos.offset(conn.direction)) || canConnect(world, pos, conn.direction)) {
                 i++;
             } else {
                 connections.remove(i);
             }
         }
+        invalidateRoutes();
     }
 
     private boolean canConnect(World world, BlockPos pos, Direction direction) {
-        SearchOption option = SearchOptions.inDirection(direction);
-        return ItemAttributes.INSERTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny()
-                || ItemAttributes.EXTRACTABLE.getAll(world, pos.offset(direction), option).hasOfferedAny();
+        return insertables.hasOfferedAny(world, pos, direction) || extractables.hasOfferedAny(world, pos, direction);
+    }
+
+    @Override
+    public boolean hasBlockConnections() {
+        return !connections.isEmpty();
     }
 
     @Override
     public PipeEndpointType[] getConnections(BlockPos pos) {
         PipeEndpointType[] connections = new PipeEndpointType[6];
-        for (Direction direction : network.manager.getNodeLinks(pos)) {
-            connections[direction.getId()] = PIPE;
+        int links = network.manager.getNodeLinks(pos);
+        for (Direction direction : Direction.values()) {
+            if (PipeNetworkManager.hasLink(links, direction)) {
+                connections[direction.getId()] = PIPE;
+            }
         }
         for (ItemConnection connection : this.connections) {
             connections[connection.direction.getId()] = connection.type;
@@ -95,6 +109,7 @@ public class ItemNetworkNode extends PipeNetworkNode {
                     conn.type = BLOCK_OUT;
                 else
                     connections.remove(i);
+                invalidateRoutes();
                 return;
             }
         }
@@ -111,6 +126,7 @@ public class ItemNetworkNode extends PipeNetworkNode {
         // Otherwise try to connect
         if (canConnect(world, pos, direction)) {
             connections.add(new ItemConnection(direction, BLOCK_IN, 0));
+            invalidateRoutes();
         }
     }
 
@@ -126,7 +142,6 @@ public class ItemNetworkNode extends PipeNetworkNode {
             }
             tag.put(connection.direction.toString(), connectionTag);
         }
-        tag.putInt("inactiveTicks", inactiveTicks);
         return tag;
     }
 
@@ -142,10 +157,10 @@ public class ItemNetworkNode extends PipeNetworkNode {
                     connection.stacks[i] = ItemStack.fromTag(connectionTag.getCompound(Integer.toString(i)));
                     connection.stacks[i].setCount(1);
                 }
+                connection.compileFilter();
                 connections.add(connection);
             }
         }
-        inactiveTicks = tag.getInt("inactiveTicks");
     }
 
     private static PipeEndpointType decodeConnectionType(int i) {
@@ -160,93 +175,98 @@ public class ItemNetworkNode extends PipeNetworkNode {
     public ExtendedScreenHandlerFactory getConnectionGui(Direction guiDirection, Runnable markDirty, Runnable sync) {
         for (ItemConnection connection : connections) {
             if (connection.direction == guiDirection) {
-                return connection.new ScreenHandlerFactory(markDirty, sync, getType().getIdentifier().getPath());
+                return connection.new ScreenHandlerFactory(markDirty, sync, this::invalidateRoutes, getType().getIdentifier().getPath());
             }
         }
         return null;
     }
 
-    @Override
-    public void tick(World world, BlockPos pos) {
-        if (inactiveTicks == 0) {
-            List<InsertTarget> reachableInputs = null;
-            outer: for (ItemConnection connection : connections) { // TODO: optimize!
-                if (connection.canExtract()) {
-                    int movesLeft = 16;
-                    if (reachableInputs == null)
-                        reachableInputs = getInputs(world, pos);
-                    ItemExtractable extractable = ItemAttributes.EXTRACTABLE.get(world, pos.offset(connection.direction),
-                            SearchOptions.inDirection(connection.direction));
-                    for (InsertTarget target : reachableInputs) {
-                        if (target.connection.canInsert()) {
-                            int moved = ItemInvUtil.moveMultiple(extractable, target.insertable,
-                                    s -> connection.canStackMoveThrough(s) && target.connection.canStackMoveThrough(s), movesLeft,
-                                    movesLeft).itemsMoved;
-                            movesLeft -= moved;
-                            if (movesLeft == 0)
-                                continue outer;
-                        }
-                    }
-                }
+    /**
+     * Add the insert targets of this node to the list, for the routing table of the
+     * network.
+     */
+    void appendInsertTargets(BlockPos pos, List<InsertTarget> targets) {
+        for (ItemConnection connection : connections) {
+            if (connection.canInsert()) {
+                targets.add(new InsertTarget(this, pos, connection));
             }
-            inactiveTicks = 100;
         }
-        --inactiveTicks;
     }
 
     /**
-     * Run a bfs to find all connections in which to insert that are loaded and
-     * reachable from the given startPos.
+     * Add the extract sources of this node to the list, for the routing table of
+     * the network.
      */
-    public List<InsertTarget> getInputs(World world, BlockPos startPos) {
-        List<InsertTarget> result = new ArrayList<>();
-
-        Queue<BlockPos> queue = new ArrayDeque<>();
-        Set<BlockPos> visited = new HashSet<>();
-        queue.add(startPos);
-        while (!queue.isEmpty()) {
-            BlockPos u = queue.remove();
-            if (visited.add(u)) {
-                PipeNetworkNode maybeUnloaded = network.nodes.get(u);
-                if (maybeUnloaded != null) {
-                    ItemNetworkNode node = (ItemNetworkNode) maybeUnloaded;
-                    for (ItemConnection connection : node.connections) {
-                        if (connection.canInsert()) {
-                            SearchOption option = SearchOptions.inDirection(connection.direction);
-                            result.add(new InsertTarget(connection, ItemAttributes.INSERTABLE.get(world, u.offset(connection.direction), option)));
-                        }
-                    }
-                }
-                for (Direction direction : network.manager.getNodeLinks(u)) {
-                    queue.add(u.offset(direction));
-                }
+    void appendExtractSources(BlockPos pos, List<ExtractSource> sources) {
+        for (ItemConnection connection : connections) {
+            if (connection.canExtract()) {
+                sources.add(new ExtractSource(this, pos, connection));
             }
         }
+    }
 
-        // Now we sort by priority, high to low
-        result.sort(Comparator.comparing(target -> -target.connection.priority));
-        // We randomly shuffle for connections with the same priority
-        int prevPriority = Integer.MIN_VALUE;
-        int st = 0;
-        for (int i = 0; i < result.size() + 1; ++i) {
-            int p = i == result.size() ? Integer.MAX_VALUE : result.get(i).connection.priority;
-            if (p != prevPriority) {
-                Collections.shuffle(result.subList(st, i));
-                prevPriority = p;
-                st = i;
-            }
+    private void invalidateRoutes() {
+        ((ItemNetwork) network).invalidateRoutes();
+    }
+
+    static class InsertTarget {
+        private final ItemNetworkNode node;
+        private final BlockPos pos;
+        private final ItemConnection connection;
+
+        private InsertTarget(ItemNetworkNode node, BlockPos pos, ItemConnection connection) {
+            this.node = node;
+            this.pos = pos;
+            this.connection = connection;
         }
 
-        return result;
+        private ItemInsertable getInsertable(World world) {
+            return node.insertables.get(world, pos, connection.direction);
+        }
+
+        int getPriority() {
+            return connection.priority;
+        }
     }
 
-    private static class InsertTarget {
+    static class ExtractSource {
+        private final ItemNetworkNode node;
+        private final BlockPos pos;
         private final ItemConnection connection;
-        private final ItemInsertable insertable;
 
-        private InsertTarget(ItemConnection connection, ItemInsertable insertable) {
+        private ExtractSource(ItemNetworkNode node, BlockPos pos, ItemConnection connection) {
+            this.node = node;
+            this.pos = pos;
             this.connection = connection;
-            this.insertable = insertable;
+        }
+
+        /**
+         * Get the extraction credit of the connection, or -1 if it was never set.
+         */
+        int getCredit() {
+            return connection.extractCredit;
+        }
+
+        void setCredit(int credit) {
+            connection.extractCredit = credit;
+        }
+
+        /**
+         * Move a single stack of at most maxItems items to the targets, in order.
+         * 
+         * @return the number of moved items
+         */
+        int moveStack(World world, List<InsertTarget> targets, int maxItems) {
+            ItemExtractable extractable = node.extractables.get(world, pos, connection.direction);
+            int movesLeft = maxItems;
+            for (InsertTarget target : targets) {
+                movesLeft -= ItemInvUtil.moveMultiple(extractable, target.getInsertable(world),
+                        s -> connection.canStackMoveThrough(s) && target.connection.canStackMoveThrough(s), 1, movesLeft).itemsMoved;
+                if (movesLeft == 0) {
+                    break;
+                }
+            }
+            return maxItems - movesLeft;
         }
     }
 
@@ -256,6 +276,11 @@ public class ItemNetworkNode extends PipeNetworkNode {
         private boolean whitelist = true;
         private int priority;
         private final ItemStack[] stacks = new ItemStack[ItemPipeInterface.SLOTS];
+        private CompiledFilter filter = CompiledFilter.EMPTY;
+        /**
+         * Extraction budget of the connection, managed by the network.
+         */
+        private int extractCredit = -1;
 
         private ItemConnection(Direction direction, PipeEndpointType type, int priority) {
             this.direction = direction;
@@ -275,19 +300,21 @@ public class ItemNetworkNode extends PipeNetworkNode {
         }
 
         private boolean canStackMoveThrough(ItemStack stack) {
-            for (ItemStack filterStack : stacks) {
-                if (ItemStackHelper.areEqualIgnoreCount(stack, filterStack)) {
-                    return whitelist;
-                }
-            }
-            return !whitelist;
+            return filter.matches(stack) == whitelist;
+        }
+
+        /**
+         * Must be called after the filter stacks are changed.
+         */
+        private void compileFilter() {
+            filter = new CompiledFilter(stacks);
         }
 
         private class ScreenHandlerFactory implements ExtendedScreenHandlerFactory {
             private final ItemPipeInterface iface;
             private final String pipeType;
 
-            private ScreenHandlerFactory(Runnable markDirty, Runnable sync, String pipeType) {
+            private ScreenHandlerFactory(Runnable markDirty, Runnable sync, Runnable invalidateRoutes, String pipeType) {
                 this.iface = new ItemPipeInterface() {
                     @Override
                     public boolean isWhitelist() {
@@ -308,6 +335,7 @@ public class ItemNetworkNode extends PipeNetworkNode {
                     @Override
                     public void setStack(int slot, ItemStack stack) {
                         stacks[slot] = stack;
+                        compileFilter();
                         markDirty.run();
                     }
 
@@ -320,6 +348,7 @@ public class ItemNetworkNode extends PipeNetworkNode {
                     public void setConnectionType(int type) {
                         if (0 <= type && type < 3) {
                             ItemConnection.this.type = decodeConnectionType(type);
+                            invalidateRoutes.run();
                             sync.run();
                         }
                     }
@@ -332,6 +361,7 @@ public class ItemNetworkNode extends PipeNetworkNode {
                     @Override
                     public void setPriority(int priority) {
                         ItemConnection.this.priority = priority;
+                        invalidateRoutes.run();
                     }
                 };
                 this.pipeType = pipeType;
@@ -353,4 +383,59 @@ public class ItemNetworkNode extends PipeNetworkNode {
             }
         }
     }
+
+    /**
+     * Immutable lookup structure for the filter stacks of a connection. It matches
+     * exactly the same stacks as {@link ItemStackHelper#areEqualIgnoreCount} with
+     * the stack as the first parameter.
+     */
+    private static final class CompiledFilter {
+        private static final CompiledFilter EMPTY = new CompiledFilter(new ItemStack[0]);
+
+        /**
+         * Items of the filter stacks without NBT.
+         */
+        private final ReferenceOpenHashSet<Item> items = new ReferenceOpenHashSet<>();
+        /**
+         * NBT of the filter stacks with NBT, by item.
+         */
+        private final Reference2ObjectOpenHashMap<Item, List<CompoundTag>> nbtItems = new Reference2ObjectOpenHashMap<>();
+
+        private CompiledFilter(ItemStack[] stacks) {
+            for (ItemStack stack : stacks) {
+                if (stack.isEmpty()) {
+                    continue;
+                }
+                if (stack.getTag() == null) {
+                    items.add(stack.getItem());
+                } else {
+                    List<CompoundTag> tags = nbtItems.get(stack.getItem());
+                    if (tags == null) {
+                        tags = new ArrayList<>();
+                        nbtItems.put(stack.getItem(), tags);
+                    }
+                    tags.add(stack.getTag().copy());
+                }
+            }
+        }
+
+        private boolean matches(ItemStack stack) {
+            Item item = stack.getItem();
+            CompoundTag tag = stack.getTag();
+            if (tag == null) {
+                // A stack without NBT only matches filter stacks of the same item without NBT,
+                // like ItemStackHelper.areEqualIgnoreCount.
+                return items.contains(item);
+            }
+            List<CompoundTag> tags = nbtItems.get(item);
+            if (tags != null) {
+                for (CompoundTag filterTag : tags) {
+                    if (tag.equals(filterTag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
 }
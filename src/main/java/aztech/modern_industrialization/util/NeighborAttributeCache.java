@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.util;
+
+import alexiil.mc.lib.attributes.CombinableAttribute;
+import alexiil.mc.lib.attributes.SearchOption;
+import alexiil.mc.lib.attributes.SearchOptions;
+import java.util.Arrays;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * Cache for an LBA attribute of the six neighbors of a block, searched in the
+ * direction of the neighbor. This is the LBA equivalent of the
+ * {@code BlockApiCache} used for energy.
+ * <p>
+ * The owner must call {@link #invalidate} when it receives a neighbor update. An
+ * entry is also refreshed automatically if the block entity it was found in is
+ * removed, or if the chunk of the neighbor is not the chunk that was loaded when
+ * the entry was created: unloading a chunk doesn't mark its block entities as
+ * removed. Neighbors in unloaded chunks are treated as absent, and are never
+ * loaded.
+ */
+public class NeighborAttributeCache<T> {
+    private final CombinableAttribute<T> attribute;
+    private final Entry<?>[] entries = new Entry<?>[6];
+
+    public NeighborAttributeCache(CombinableAttribute<T> attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * Get the combined attribute of the neighbor, like
+     * {@link CombinableAttribute#get}.
+     */
+    public T get(World world, BlockPos pos, Direction direction) {
+        Entry<T> entry = getEntry(world, pos, direction);
+        return entry == null ? attribute.defaultValue : entry.value;
+    }
+
+    /**
+     * Return whether the neighbor offers the attribute, like
+     * {@code getAll(...).hasOfferedAny()}.
+     */
+    public boolean hasOfferedAny(World world, BlockPos pos, Direction direction) {
+        Entry<T> entry = getEntry(world, pos, direction);
+        return entry != null && entry.offeredAny;
+    }
+
+    public void invalidate() {
+        Arrays.fill(entries, null);
+    }
+
+    /**
+     * @return the entry for the neighbor, or null if the neighbor is not loaded.
+     */
+    @SuppressWarnings("unchecked")
+    private Entry<T> getEntry(World world, BlockPos pos, Direction direction) {
+        Entry<T> entry = (Entry<T>) entries[direction.getId()];
+        // Checked on every access, because the chunk might have been unloaded since the
+        // entry was created.
+        WorldChunk chunk = WorldHelper.getLoadedChunk(world, pos.offset(direction));
+        if (chunk == null) {
+            entries[direction.getId()] = null;
+            return null;
+        }
+        if (entry == null || !entry.isValid(world, pos, chunk)) {
+            entry = new Entry<>(attribute, world, pos, direction, chunk);
+            entries[direction.getId()] = entry;
+        }
+        return entry;
+    }
+
+    private static class Entry<T> {
+        private final World world;
+        private final BlockPos pos;
+        private final T value;
+        private final boolean offeredAny;
+        private final BlockEntity blockEntity;
+        private final WorldChunk chunk;
+
+        private Entry(CombinableAttribute<T> attribute, World world, BlockPos pos, Direction direction, WorldChunk chunk) {
+            this.world = world;
+            this.chunk = chunk;
+            this.pos = pos.toImmutable();
+            BlockPos target = pos.offset(direction);
+            SearchOption option = SearchOptions.inDirection(direction);
+            this.value = attribute.get(world, target, option);
+            this.offeredAny = attribute.getAll(world, target, option).hasOfferedAny();
+            this.blockEntity = world.getBlockEntity(target);
+        }
+
+        private boolean isValid(World world, BlockPos pos, WorldChunk chunk) {
+            return this.world == world && this.pos.equals(pos) && this.chunk == chunk && (blockEntity == null || !blockEntity.isRemoved());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.WorldChunk;
+
+public class WorldHelper {
+    private static final Map<World, LongAdder> SKIPPED_NEIGHBOR_LOOKUPS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Check if a neighbor is in a loaded chunk, without loading it. Hot paths must
+     * treat unloaded neighbors as absent, otherwise looking them up would load
+     * their chunk synchronously on the server thread.
+     */
+    public static boolean isNeighborLoaded(World world, BlockPos neighborPos) {
+        if (world.isChunkLoaded(neighborPos)) {
+            return true;
+        }
+        SKIPPED_NEIGHBOR_LOOKUPS.computeIfAbsent(world, w -> new LongAdder()).increment();
+        return false;
+    }
+
+    /**
+     * Get how many times {@link #isNeighborLoaded} found an unloaded neighbor in a
+     * world since it was loaded.
+     */
+    public static long getSkippedNeighborLookups(World world) {
+        LongAdder counter = SKIPPED_NEIGHBOR_LOOKUPS.get(world);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Get the chunk that contains a position if it is loaded, without loading it.
+     * 
+     * @return the chunk, or null if it is not loaded.
+     */
+    public static WorldChunk getLoadedChunk(World world, BlockPos pos) {
+        if (!isNeighborLoaded(world, pos)) {
+            return null;
+        }
+        return world.getChunkManager().getWorldChunk(pos.getX() >> 4, pos.getZ() >> 4, false);
+    }
+}
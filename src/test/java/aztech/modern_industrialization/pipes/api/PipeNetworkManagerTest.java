@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes.api;
+
+import static aztech.modern_industrialization.pipes.api.TestPipes.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class PipeNetworkManagerTest {
+    private final PipeNetworkManager manager = new PipeNetworkManager(TYPE);
+
+    private TestNode addNode(int x, int content) {
+        TestNode node = new TestNode();
+        manager.addNode(node, new BlockPos(x, 0, 0), new TestData(content));
+        return node;
+    }
+
+    @AfterEach
+    public void checkState() {
+        manager.assertStateCoherence();
+    }
+
+    @Test
+    public void batchMergesCompatibleNetworks() {
+        TestNode water = addNode(0, WATER);
+        TestNode empty = addNode(1, EMPTY);
+        TestNode otherEmpty = addNode(2, EMPTY);
+
+        manager.beginBatch();
+        manager.addLink(new BlockPos(0, 0, 0), Direction.EAST, true);
+        manager.addLink(new BlockPos(1, 0, 0), Direction.EAST, true);
+        assertNotSame(water.network, empty.network);
+        manager.commit();
+
+        assertSame(water.network, empty.network);
+        assertSame(water.network, otherEmpty.network);
+        assertEquals(WATER, ((TestData) water.network.data).content);
+        assertEquals(3, water.network.nodes.size());
+    }
+
+    @Test
+    public void batchKeepsIncompatibleNetworksApart() {
+        TestNode water = addNode(0, WATER);
+        TestNode empty = addNode(1, EMPTY);
+        TestNode lava = addNode(2, LAVA);
+
+        // Every link is possible on its own, but water and lava can't end up in the
+        // same network. Like two addLink calls, the first link is kept and the second
+        // one is dropped.
+        manager.beginBatch();
+        manager.addLink(new BlockPos(0, 0, 0), Direction.EAST, true);
+        manager.addLink(new BlockPos(1, 0, 0), Direction.EAST, true);
+        LongSet droppedLinks = manager.commit();
+
+        assertSame(water.network, empty.network);
+        assertNotSame(water.network, lava.network);
+        assertEquals(WATER, ((TestData) water.network.data).content);
+        assertEquals(LAVA, ((TestData) lava.network.data).content);
+        assertTrue(manager.hasLink(new BlockPos(0, 0, 0), Direction.EAST));
+        assertFalse(manager.hasLink(new BlockPos(1, 0, 0), Direction.EAST));
+        assertEquals(new LongOpenHashSet(new long[] { new BlockPos(1, 0, 0).asLong(), new BlockPos(2, 0, 0).asLong() }), droppedLinks);
+    }
+
+    @Test
+    public void nestedCommitDropsNothing() {
+        addNode(0, WATER);
+        addNode(1, EMPTY);
+        addNode(2, LAVA);
+
+        manager.beginBatch();
+        manager.beginBatch();
+        manager.addLink(new BlockPos(0, 0, 0), Direction.EAST, true);
+        manager.addLink(new BlockPos(1, 0, 0), Direction.EAST, true);
+        assertTrue(manager.commit().isEmpty());
+        assertEquals(2, manager.commit().size());
+    }
+
+    @Test
+    public void tickDuringBatchFails() {
+        manager.beginBatch();
+        assertThrows(IllegalStateException.class, () -> manager.tickNetworks(null, network -> {
+        }));
+        manager.commit();
+    }
+
+    @Test
+    public void batchSplitsNetworks() {
+        TestNode[] nodes = new TestNode[5];
+        for (int x = 0; x < nodes.length; ++x) {
+            nodes[x] = addNode(x, WATER);
+        }
+        for (int x = 0; x + 1 < nodes.length; ++x) {
+            manager.addLink(new BlockPos(x, 0, 0), Direction.EAST, false);
+        }
+        assertSame(nodes[0].network, nodes[4].network);
+
+        manager.beginBatch();
+        manager.removeLink(new BlockPos(1, 0, 0), Direction.EAST);
+        manager.removeNode(new BlockPos(3, 0, 0));
+        manager.commit();
+
+        assertSame(nodes[0].network, nodes[1].network);
+        assertNotSame(nodes[0].network, nodes[2].network);
+        assertNotSame(nodes[2].network, nodes[4].network);
+        assertEquals(2, nodes[0].network.nodes.size());
+        assertEquals(1, nodes[2].network.nodes.size());
+        assertNotSame(nodes[0].network.data, nodes[4].network.data);
+    }
+
+    @Test
+    public void addLinkMovesSmallerNetwork() {
+        // The old addLink always moved the network at pos + direction into the network
+        // at pos. Linking every new pipe from itself to the end of the line then moved
+        // the whole line each time, for about PIPES * PIPES / 2 moved nodes in total.
+        int pipes = 10000;
+        TestNode firstNode = addNode(0, WATER);
+        for (int x = 1; x < pipes; ++x) {
+            addNode(x, WATER);
+            manager.addLink(new BlockPos(x, 0, 0), Direction.WEST, false);
+        }
+
+        assertEquals(pipes, firstNode.network.nodes.size());
+        assertEquals(pipes - 1, manager.movedNodes);
+    }
+
+    @Test
+    public void commitWithoutBatchFails() {
+        assertThrows(IllegalStateException.class, manager::commit);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Azercoco & Technici4n
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package aztech.modern_industrialization.pipes.api;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.World;
+
+/**
+ * A pipe network type for the tests, that doesn't need a world.
+ */
+final class TestPipes {
+    static final PipeNetworkType TYPE = PipeNetworkType.register(new Identifier("modern_industrialization", "test_pipe"), TestNetwork::new,
+            TestNode::new, 0, false, null);
+    static final int EMPTY = 0, WATER = 1, LAVA = 2;
+
+    private TestPipes() {
+    }
+
+    /**
+     * Network data with some content, that can only be merged if one side is
+     * empty, like fluid networks.
+     */
+    static class TestData extends PipeNetworkData {
+        int content;
+
+        TestData(int content) {
+            this.content = content;
+        }
+
+        @Override
+        public TestData clone() {
+            return new TestData(content);
+        }
+
+        @Override
+        public void fromTag(CompoundTag tag) {
+            content = tag.getInt("content");
+        }
+
+        @Override
+        public CompoundTag toTag(CompoundTag tag) {
+            tag.putInt("content", content);
+            return tag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TestData && ((TestData) obj).content == content;
+        }
+
+        @Override
+        public int hashCode() {
+            return content;
+        }
+    }
+
+    static class TestNetwork extends PipeNetwork {
+        TestNetwork(int id, PipeNetworkData data) {
+            super(id, data == null ? new TestData(EMPTY) : data);
+        }
+
+        @Override
+        public PipeNetworkData merge(PipeNetwork other) {
+            if (((TestData) data).content == EMPTY)
+                return other.data.clone();
+            if (((TestData) other.data).content == EMPTY)
+                return data.clone();
+            return null;
+        }
+    }
+
+    static class TestNode extends PipeNetworkNode {
+        @Override
+        public void updateConnections(World world, BlockPos pos) {
+        }
+
+        @Override
+        public PipeEndpointType[] getConnections(BlockPos pos) {
+            return new PipeEndpointType[6];
+        }
+
+        @Override
+        public void removeConnection(World world, BlockPos pos, Direction direction) {
+        }
+
+        @Override
+        public void addConnection(World world, BlockPos pos, Direction direction) {
+        }
+
+        @Override
+        public CompoundTag toTag(CompoundTag tag) {
+            return tag;
+        }
+
+        @Override
+        public void fromTag(CompoundTag tag) {
+        }
+    }
+}